@@ -0,0 +1,29 @@
+#!/bin/sh
+
+# keeps the patterns loaded and tags parsed trees sent to it, one request per line
+# usage: tag-server.sh [port]
+# with a port, it accepts connections on localhost:port; otherwise it reads
+# requests from stdin and answers on stdout (see TsurgeonServer for the protocol)
+
+port=$1
+
+root=`pwd`
+prep_dir=$root/patterns/preparatory
+idio_dir=$root/patterns/idiosyncratic
+template_dir=$root/patterns/generalized-templates
+lexicon=$root/lexicon.txt
+cleanup_dir=$root/patterns/cleanup
+rules=$root/patterns/rules.bin
+tregex_dir=$root/tools/stanford-tregex
+
+# compile the patterns into one bundle, as tag.sh does
+cd $tregex_dir
+if [ ! -f $rules ] || [ -n "`find $prep_dir $idio_dir $template_dir $cleanup_dir -maxdepth 0 -newer $rules`" ]; then
+  ./compile-rules.sh $rules -lexicon $lexicon $prep_dir/*.txt $idio_dir/*.txt $template_dir/*.txt $cleanup_dir/*.txt
+fi
+
+if [ -n "$port" ]; then
+  ./tsurgeon.sh -rules $rules -port $port
+else
+  ./tsurgeon.sh -rules $rules -stdin
+fi
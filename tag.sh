@@ -8,13 +8,22 @@ treefile=$1
 root=`pwd`
 prep_dir=$root/patterns/preparatory
 idio_dir=$root/patterns/idiosyncratic
-pattern_dir=$root/patterns/instantiated-templates
+template_dir=$root/patterns/generalized-templates
+lexicon=$root/lexicon.txt
 cleanup_dir=$root/patterns/cleanup
+rules=$root/patterns/rules.bin
 tregex_dir=$root/tools/stanford-tregex
 
-# run the patterns, in order
+# compile the patterns, in order, into one bundle, unless that's been done
+# since any pattern file was added or removed (tsurgeon notices changes
+# to the files themselves)
 cd $tregex_dir
-./tsurgeon.sh -treeFile $root/$treefile $prep_dir/*.txt $idio_dir/*.txt $pattern_dir/*.txt $cleanup_dir/*.txt
+if [ ! -f $rules ] || [ -n "`find $prep_dir $idio_dir $template_dir $cleanup_dir -maxdepth 0 -newer $rules`" ]; then
+  ./compile-rules.sh $rules -lexicon $lexicon $prep_dir/*.txt $idio_dir/*.txt $template_dir/*.txt $cleanup_dir/*.txt
+fi
+
+# run the patterns
+./tsurgeon.sh -rules $rules -treeFile $root/$treefile
 ###find "$root/$treefile" "$prep_dir/*.txt" "$idio_dir/*.txt" "$pattern_dir/*.txt" "$cleanup_dir/*.txt" -print0 | xargs -0 ./tsurgeon.sh -treeFile
 
 exit 0
@@ -0,0 +1,9 @@
+#!/bin/sh
+
+# compiles Tsurgeon operation files into one rule bundle, for tsurgeon.sh -rules
+# usage: compile-rules.sh bundle-file [-lexicon file] [-macros file] operation-file-1 ... operation-file-n
+
+bundle=$1
+shift
+export CLASSPATH=stanford-tregex.jar:$CLASSPATH
+java -mx100m edu.stanford.nlp.trees.tregex.tsurgeon.Tsurgeon -compileRules "$bundle" "$@"
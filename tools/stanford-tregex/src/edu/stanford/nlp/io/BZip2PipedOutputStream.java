@@ -24,6 +24,18 @@ public class BZip2PipedOutputStream extends OutputStream
   }
 
   public BZip2PipedOutputStream(String filename, OutputStream err) throws IOException {
+    this(filename, new FileOutputStream(filename), err);
+  }
+
+  /**
+   * Writes the output from the bzip2 command to a stream, such as
+   * <code>System.out</code>, which is closed when this one is.
+   */
+  public BZip2PipedOutputStream(OutputStream out, OutputStream err) throws IOException {
+    this("-", out, err);
+  }
+
+  private BZip2PipedOutputStream(String filename, OutputStream outStream, OutputStream err) throws IOException {
     String bzip2 = System.getProperty("bzip2", "bzip2");
     String cmd = bzip2; // + " > " + filename;
     //System.err.println("getBZip2PipedOutputStream: Running command: "+cmd);
@@ -31,7 +43,6 @@ public class BZip2PipedOutputStream extends OutputStream
     pb.command(cmd);
     this.process = pb.start();
     this.filename = filename;
-    OutputStream outStream = new FileOutputStream(filename);
     errWriter = new PrintWriter(new BufferedWriter(new OutputStreamWriter(err)));
     outGobbler = new ByteStreamGobbler("Output stream gobbler: " + cmd + " " + filename,
             process.getInputStream(), outStream);
@@ -50,6 +61,11 @@ public class BZip2PipedOutputStream extends OutputStream
     process.getOutputStream().write(b);
   }
 
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    process.getOutputStream().write(b, off, len);
+  }
+
   public void close() throws IOException
   {
     process.getOutputStream().close();
@@ -11,6 +11,7 @@ public class ExtensionFileFilter extends javax.swing.filechooser.FileFilter impl
 
   private String extension;    // = null
   private boolean recursively;
+  private boolean compressed;  // = false
 
   /**
    * Sets up Extension file filter by specifying an extension
@@ -24,6 +25,19 @@ public class ExtensionFileFilter extends javax.swing.filechooser.FileFilter impl
    * @param recurse go into folders
    */
   public ExtensionFileFilter(String ext, boolean recurse) {
+    this(ext, recurse, false);
+  }
+
+  /**
+   * Sets up Extension file filter which, if <code>compressed</code> is
+   * true, also accepts files with the extension followed by
+   * <code>.gz</code> or <code>.bz2</code>, such as <code>wsj_0001.mrg.gz</code>.
+   *
+   * @param ext     File extension (not including period) or null for any
+   * @param recurse go into folders
+   * @param compressed accept compressed files with the extension too
+   */
+  public ExtensionFileFilter(String ext, boolean recurse, boolean compressed) {
     if (ext != null) {
       if (ext.startsWith(".")) {
         extension = ext;
@@ -32,6 +46,7 @@ public class ExtensionFileFilter extends javax.swing.filechooser.FileFilter impl
       }
     }
     recursively = recurse;
+    this.compressed = compressed;
   }
 
   /**
@@ -55,7 +70,11 @@ public class ExtensionFileFilter extends javax.swing.filechooser.FileFilter impl
     } else if (extension == null) {
       return true;
     } else {
-      return file.getName().endsWith(extension);
+      String name = file.getName();
+      if (compressed && IOUtils.isCompressedFileName(name)) {
+        name = name.substring(0, name.lastIndexOf('.'));
+      }
+      return name.endsWith(extension);
     }
   }
 
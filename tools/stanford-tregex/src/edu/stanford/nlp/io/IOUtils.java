@@ -943,6 +943,64 @@ public class IOUtils {
     return out;
   }
 
+  /**
+   * Opens a file for reading, decompressing it as it is read if it is
+   * gzip or bzip2 compressed.  Whether it is is worked out from the first
+   * bytes of the file, not its name.  A gzip file is decompressed on a
+   * thread of its own, and a bzip2 file by a <code>bzcat</code> process,
+   * so that decompressing overlaps with whatever the caller does with
+   * what it reads.
+   *
+   * @param file The file to open
+   * @return A stream of the (decompressed) contents of the file
+   * @throws IOException if there are exceptions opening the file
+   */
+  public static InputStream getDecompressingInputStream(File file) throws IOException {
+    BufferedInputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    in.mark(3);
+    int b0 = in.read();
+    int b1 = in.read();
+    int b2 = in.read();
+    in.reset();
+    if (b0 == 0x1f && b1 == 0x8b) {
+      return new ReadAheadInputStream(new GZIPInputStream(in, 1 << 16));
+    } else if (b0 == 'B' && b1 == 'Z' && b2 == 'h') {
+      in.close();
+      return getBZip2PipedInputStream(file.getPath());
+    }
+    return in;
+  }
+
+  /**
+   * Whether a file name ends in the extension of a compressed file that
+   * {@link #getDecompressingInputStream} reads, <code>.gz</code> or
+   * <code>.bz2</code>.
+   */
+  public static boolean isCompressedFileName(String filename) {
+    return filename.endsWith(".gz") || filename.endsWith(".bz2");
+  }
+
+  /**
+   * Compresses what is written to a stream, for the
+   * <code>-outputCompression</code> option of the command-line tools.
+   *
+   * @param out The stream to write the compressed output to
+   * @param compression <code>gzip</code>, <code>bzip2</code> (which runs the
+   *     <code>bzip2</code> command), or <code>none</code>
+   * @return A stream to write to, which must be closed to finish the output
+   * @throws IOException if there are exceptions starting the compressor
+   */
+  public static OutputStream getCompressingOutputStream(OutputStream out, String compression) throws IOException {
+    if (compression.equals("gzip")) {
+      return new GZIPOutputStream(out, 1 << 16);
+    } else if (compression.equals("bzip2")) {
+      return new BZip2PipedOutputStream(out, System.err);
+    } else if (compression.equals("none")) {
+      return out;
+    }
+    throw new IllegalArgumentException("Unknown output compression " + compression + ": must be gzip, bzip2 or none");
+  }
+
   public static BufferedReader getBufferedFileReader(String filename) throws IOException {
     return getBufferedFileReader(filename, defaultEnc);
   }
@@ -970,7 +1028,7 @@ public class IOUtils {
   {
     String bzcat = System.getProperty("bzcat", "bzcat");
     Runtime rt = Runtime.getRuntime();
-    String cmd = bzcat + " " + filename;
+    String[] cmd = { bzcat, filename };
     //System.err.println("getBZip2PipedInputStream: Running command: "+cmd);
     Process p = rt.exec(cmd);
     Writer errWriter = new BufferedWriter(new OutputStreamWriter(System.err));
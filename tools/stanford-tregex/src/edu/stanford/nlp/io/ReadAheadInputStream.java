@@ -0,0 +1,205 @@
+package edu.stanford.nlp.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An InputStream that reads another one ahead on a thread of its own,
+ * keeping a few blocks of what it has read until they are asked for.
+ * Wrapped around a stream that takes work to read, such as a
+ * <code>GZIPInputStream</code>, it lets that work overlap with whatever is
+ * done with the bytes.  An exception from the other stream is thrown from
+ * the read that reaches the point where it happened.
+ * <p/>
+ * The thread stops, dropping the blocks it has read and closing the other
+ * stream, once the other stream is used up, once this one is closed, or
+ * once this one is no longer used anywhere and has been garbage collected,
+ * so a stream that isn't read to the end needn't leave the thread behind.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+  private static final int BLOCK_SIZE = 1 << 16;
+  private static final int BLOCKS = 8;
+
+  /** How long the thread waits for room for a block before it checks whether it is still wanted */
+  private static final long WAIT_MILLIS = 500;
+
+  /** Put on the queue when the other stream is used up, or reading ahead stops */
+  private static final byte[] END = new byte[0];
+
+  private final ReadAhead ahead;
+  private final Thread reader;
+
+  /** The block being read from, and the position in it */
+  private byte[] block;
+  private int pos;
+
+  /**
+   * Starts reading a stream ahead.
+   *
+   * @param in The stream to read, which should only be read from here on
+   *     through this one
+   */
+  public ReadAheadInputStream(InputStream in) {
+    ahead = new ReadAhead(in, this);
+    reader = new Thread(ahead, "ReadAheadInputStream");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+
+  /**
+   * The reading done on the thread.  It only has a weak reference to the
+   * stream, so that the thread doesn't keep a stream that has been dropped
+   * from being collected.
+   */
+  private static class ReadAhead implements Runnable {
+
+    private final InputStream in;
+    private final WeakReference<ReadAheadInputStream> owner;
+    final BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<byte[]>(BLOCKS);
+    volatile IOException exception; // = null;
+    volatile boolean closed; // = false;
+
+    ReadAhead(InputStream in, ReadAheadInputStream owner) {
+      this.in = in;
+      this.owner = new WeakReference<ReadAheadInputStream>(owner);
+    }
+
+    /** Whether the blocks are no longer wanted */
+    private boolean stopped() {
+      return closed || owner.get() == null;
+    }
+
+    public void run() {
+      try {
+        while ( ! stopped()) {
+          byte[] b = new byte[BLOCK_SIZE];
+          int n = 0;
+          int read;
+          // fill a whole block unless the stream ends, to keep the queue small
+          while (n < b.length && (read = in.read(b, n, b.length - n)) >= 0) {
+            n += read;
+          }
+          if (n < b.length) {
+            if (n > 0) {
+              byte[] last = new byte[n];
+              System.arraycopy(b, 0, last, 0, n);
+              put(last);
+            }
+            break;
+          }
+          put(b);
+        }
+      } catch (IOException e) {
+        exception = e;
+      } catch (InterruptedException e) {
+        // closed while waiting for room
+      } finally {
+        if (stopped()) {
+          // nobody will read the blocks, so there is room for the end,
+          // which wakes up a read that is waiting
+          blocks.clear();
+          blocks.offer(END);
+        } else {
+          try {
+            put(END);
+          } catch (InterruptedException e) {
+            // closed while waiting for room
+            blocks.clear();
+            blocks.offer(END);
+          }
+        }
+        try {
+          in.close();
+        } catch (IOException e) {
+          // the blocks are all read or not wanted, so it doesn't matter
+        }
+      }
+    }
+
+    /** Waits for room for a block, throwing InterruptedException if it is no longer wanted */
+    private void put(byte[] b) throws InterruptedException {
+      while ( ! blocks.offer(b, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+        if (stopped()) {
+          throw new InterruptedException();
+        }
+      }
+    }
+
+  }
+
+
+  /** Moves on to the next block if this one is used up; false at the end */
+  private boolean fill() throws IOException {
+    if (block == END) {
+      return false;
+    }
+    if (block == null || pos == block.length) {
+      if (ahead.closed) {
+        throw new IOException("Stream closed");
+      }
+      try {
+        block = ahead.blocks.take();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+      pos = 0;
+      if (block == END) {
+        if (ahead.closed) {
+          throw new IOException("Stream closed");
+        }
+        if (ahead.exception != null) {
+          throw ahead.exception;
+        }
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if ( ! fill()) {
+      return -1;
+    }
+    return block[pos++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if ( ! fill()) {
+      return -1;
+    }
+    int n = Math.min(len, block.length - pos);
+    System.arraycopy(block, pos, b, off, n);
+    pos += n;
+    return n;
+  }
+
+  @Override
+  public int available() {
+    return (block == null || block == END ? 0 : block.length - pos);
+  }
+
+  /**
+   * Stops reading ahead.  The other stream is closed by the reading thread
+   * as it stops, rather than here, as the thread may be reading from it.
+   */
+  @Override
+  public void close() {
+    if ( ! ahead.closed) {
+      ahead.closed = true;
+      reader.interrupt();
+    }
+  }
+
+}
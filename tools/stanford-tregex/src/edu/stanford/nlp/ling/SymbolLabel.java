@@ -0,0 +1,198 @@
+package edu.stanford.nlp.ling;
+
+import edu.stanford.nlp.util.Function;
+import edu.stanford.nlp.util.SymbolTable;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+/**
+ * A <code>SymbolLabel</code> is a Label with a single String value, like a
+ * {@link StringLabel}, whose value is kept in the global
+ * {@link SymbolTable}.  Labels with equal values share one String, and
+ * each label knows the integer id of its value, so that two labels can be
+ * compared with an int comparison.  A label also remembers the basic
+ * category of its value under the last function asked for one, so that
+ * tregex patterns using <code>@</code> don't work it out again on each
+ * visit to a node.
+ * <p/>
+ * Reading trees with these labels is worthwhile when many trees are kept
+ * in memory, or when the same trees are matched against many patterns.
+ * Making a label takes a lookup in the table, which is synchronized, but
+ * copying one doesn't.
+ */
+public class SymbolLabel extends ValueLabel {
+
+  private String value;
+
+  /** The id of value in the global SymbolTable */
+  private transient int symbol; // = SymbolTable.NO_SYMBOL;
+
+  private transient BasicCategory basicCategory;
+
+  /** The basic category of a value under one function */
+  private static class BasicCategory {
+    final Function<String,String> function;
+    final String value;
+    final int symbol;
+
+    BasicCategory(Function<String,String> function, String value, int symbol) {
+      this.function = function;
+      this.value = value;
+      this.symbol = symbol;
+    }
+  }
+
+  /**
+   * Create a new <code>SymbolLabel</code> with a null value.
+   */
+  public SymbolLabel() {
+  }
+
+  /**
+   * Create a new <code>SymbolLabel</code> with the given value.
+   *
+   * @param value The new label's value
+   */
+  public SymbolLabel(String value) {
+    setValue(value);
+  }
+
+  /**
+   * Create a new <code>SymbolLabel</code> whose value is the string with
+   * the given id in the global {@link SymbolTable}.
+   *
+   * @param symbol An id given out by the global table
+   */
+  public SymbolLabel(int symbol) {
+    this.symbol = symbol;
+    value = SymbolTable.getGlobal().string(symbol);
+  }
+
+  /**
+   * Create a new <code>SymbolLabel</code> with the
+   * <code>value()</code> of another label as its value.
+   *
+   * @param label The other label
+   */
+  public SymbolLabel(Label label) {
+    if (label instanceof SymbolLabel) {
+      SymbolLabel other = (SymbolLabel) label;
+      value = other.value;
+      symbol = other.symbol;
+      basicCategory = other.basicCategory;
+    } else {
+      setValue(label.value());
+    }
+  }
+
+  /**
+   * Return the value of the label (or null if none).
+   *
+   * @return String the value for the label
+   */
+  @Override
+  public String value() {
+    return value;
+  }
+
+  /**
+   * Set the value for the label.
+   *
+   * @param value The value for the label
+   */
+  @Override
+  public void setValue(final String value) {
+    SymbolTable table = SymbolTable.getGlobal();
+    symbol = table.symbol(value);
+    this.value = table.string(symbol);
+    basicCategory = null;
+  }
+
+  /**
+   * Set the label from a String.
+   *
+   * @param str The str for the label
+   */
+  @Override
+  public void setFromString(final String str) {
+    setValue(str);
+  }
+
+  /**
+   * The id of the value of this label in the global {@link SymbolTable},
+   * or {@link SymbolTable#NO_SYMBOL} if it has no value.
+   */
+  public int symbol() {
+    return symbol;
+  }
+
+  /**
+   * Returns the basic category of the value of this label, as given by a
+   * function such as {@link edu.stanford.nlp.trees.TreebankLanguagePack#getBasicCategoryFunction}.
+   *
+   * @return The basic category, or <code>null</code> if the label has no value
+   */
+  public String basicCategory(Function<String,String> basicCatFunction) {
+    return basicCategoryOf(basicCatFunction).value;
+  }
+
+  /**
+   * Returns the id in the global {@link SymbolTable} of the basic category
+   * of the value of this label.
+   *
+   * @return The id, or {@link SymbolTable#NO_SYMBOL} if the label has no value
+   */
+  public int basicCategorySymbol(Function<String,String> basicCatFunction) {
+    return basicCategoryOf(basicCatFunction).symbol;
+  }
+
+  private BasicCategory basicCategoryOf(Function<String,String> basicCatFunction) {
+    BasicCategory category = basicCategory;
+    if (category == null || category.function != basicCatFunction) {
+      SymbolTable table = SymbolTable.getGlobal();
+      int categorySymbol = table.symbol(value == null ? null : basicCatFunction.apply(value));
+      category = new BasicCategory(basicCatFunction, table.string(categorySymbol), categorySymbol);
+      basicCategory = category;
+    }
+    return category;
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    // ids are only good for the table they came from
+    setValue(value);
+  }
+
+  // extra class guarantees correct lazy loading (Bloch p.194)
+  private static class SymbolLabelFactoryHolder {
+
+    private SymbolLabelFactoryHolder() {}
+
+    static final LabelFactory lf = new SymbolLabelFactory();
+  }
+
+  /**
+   * Return a factory for this kind of label
+   * (i.e., <code>SymbolLabel</code>).
+   * The factory returned is always the same one (a singleton).
+   *
+   * @return The label factory
+   */
+  @Override
+  public LabelFactory labelFactory() {
+    return SymbolLabelFactoryHolder.lf;
+  }
+
+  /**
+   * Return a factory for this kind of label.
+   *
+   * @return The label factory
+   */
+  public static LabelFactory factory() {
+    return SymbolLabelFactoryHolder.lf;
+  }
+
+  private static final long serialVersionUID = 2604316713460853316L;
+
+}
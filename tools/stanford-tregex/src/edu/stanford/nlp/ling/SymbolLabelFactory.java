@@ -0,0 +1,62 @@
+package edu.stanford.nlp.ling;
+
+
+/**
+ * A <code>SymbolLabelFactory</code> object makes a
+ * <code>SymbolLabel</code>, whose value is kept in the global symbol table,
+ * out of a <code>String</code>.
+ */
+public class SymbolLabelFactory implements LabelFactory {
+
+  /**
+   * Make a new label with this <code>String</code> as the "name".
+   *
+   * @param labelStr A string that determines the content of the label.
+   *                 For a SymbolLabel, it is exactly the given string
+   * @return The created label
+   */
+  public Label newLabel(String labelStr) {
+    return new SymbolLabel(labelStr);
+  }
+
+
+  /**
+   * Make a new label with this <code>String</code> as the "name".
+   *
+   * @param labelStr A string that determines the content of the label.
+   *                 For a SymbolLabel, it is exactly the given string
+   * @param options  The options are ignored by a SymbolLabelFactory
+   * @return The created label
+   */
+  public Label newLabel(String labelStr, int options) {
+    return new SymbolLabel(labelStr);
+  }
+
+
+  /**
+   * Make a new label with this <code>String</code> as the "name".
+   * This version does no decoding -- SymbolLabels just have a value.
+   *
+   * @param labelStr A string that determines the content of the label.
+   *                 For a SymbolLabel, it is exactly the given string
+   * @return The created label
+   */
+  public Label newLabelFromString(String labelStr) {
+    return new SymbolLabel(labelStr);
+  }
+
+
+  /**
+   * Create a new <code>SymbolLabel</code>, where the label is
+   * formed from
+   * the <code>Label</code> object passed in.  Depending on what fields
+   * each label has, other things will be <code>null</code>.
+   *
+   * @param oldLabel The Label that the new label is being created from
+   * @return a new label of a particular type
+   */
+  public Label newLabel(Label oldLabel) {
+    return new SymbolLabel(oldLabel);
+  }
+
+}
@@ -0,0 +1,265 @@
+package edu.stanford.nlp.trees;
+
+import edu.stanford.nlp.ling.Label;
+import edu.stanford.nlp.ling.SymbolLabel;
+import edu.stanford.nlp.util.SymbolTable;
+
+/**
+ * A <code>CompactTree</code> holds a tree that is only to be searched, not
+ * changed, in a handful of int arrays rather than as a graph of node
+ * objects.  Node i is the i-th node of the tree in preorder, and for each
+ * node the arrays give the id of its label in the global
+ * {@link SymbolTable}, the index of its parent and of its next sister, the
+ * number of nodes in its subtree, and the span of leaves it covers.  Since
+ * the nodes are in preorder, the first child of node i is node i + 1, and
+ * the nodes that node i dominates are exactly those after it and less than
+ * i + size of its subtree.  That is about 24 bytes a node, where a
+ * {@link LabeledScoredTreeNode} with its label, value and array of
+ * children takes several times that.
+ * <p/>
+ * The tree is searched through a {@link #view()}, a read-only
+ * <code>Tree</code> whose nodes answer {@link Tree#parent()} and
+ * {@link Tree#dominates(Tree)} from the arrays, and whose leaf spans are
+ * used by {@link Trees#leftEdge} and {@link Trees#rightEdge}, so that the
+ * tregex dominance relations become an interval check and precedence an
+ * int comparison.  Its labels are {@link SymbolLabel}s, which tregex
+ * compares by id.  A view only lives for as long as a tree is being
+ * searched, so a corpus kept as <code>CompactTree</code>s, as by a
+ * {@link CompactTreebank}, takes far less memory than one kept as trees.
+ * <p/>
+ * The ids are only good for as long as the global table lasts, so a
+ * <code>CompactTree</code> isn't serializable.
+ */
+public class CompactTree {
+
+  private static final int NONE = -1;
+
+  /** The id of the value of each node in the global SymbolTable */
+  private final int[] labels;
+  /** The index of the parent of each node, or NONE for the root */
+  private final int[] parents;
+  /** The index of the next sister of each node, or NONE */
+  private final int[] nextSisters;
+  /** The number of nodes in the subtree of each node, counting itself */
+  private final int[] sizes;
+  /** The index of the first leaf under each node */
+  private final int[] yieldStarts;
+  /** One more than the index of the last leaf under each node */
+  private final int[] yieldEnds;
+
+  /**
+   * Encodes a tree.  Only the structure of the tree and the values of its
+   * labels are kept; other annotations and scores are not.
+   *
+   * @param t The tree to encode, which is not changed
+   */
+  public CompactTree(Tree t) {
+    int n = t.size();
+    labels = new int[n];
+    parents = new int[n];
+    nextSisters = new int[n];
+    sizes = new int[n];
+    yieldStarts = new int[n];
+    yieldEnds = new int[n];
+    encode(t, NONE, 0, 0, SymbolTable.getGlobal());
+  }
+
+  /**
+   * Fills in the arrays for the subtree of t, which is node i.
+   *
+   * @return The number of leaves under t
+   */
+  private int encode(Tree t, int parent, int i, int yieldStart, SymbolTable table) {
+    labels[i] = table.symbol(t.value());
+    parents[i] = parent;
+    nextSisters[i] = NONE;
+    yieldStarts[i] = yieldStart;
+    int next = i + 1;
+    int yieldEnd = yieldStart;
+    Tree[] kids = t.children();
+    if (kids.length == 0) {
+      yieldEnd++;
+    }
+    int previous = NONE;
+    for (Tree kid : kids) {
+      if (previous != NONE) {
+        nextSisters[previous] = next;
+      }
+      previous = next;
+      yieldEnd = encode(kid, i, next, yieldEnd, table);
+      next += sizes[previous];
+    }
+    sizes[i] = next - i;
+    yieldEnds[i] = yieldEnd;
+    return yieldEnd;
+  }
+
+  /**
+   * The number of nodes in the tree.
+   */
+  public int size() {
+    return labels.length;
+  }
+
+  /**
+   * Returns a read-only tree over this one.  Each call makes a new view,
+   * whose nodes are made when it is, so a view should be kept for as long
+   * as the same tree is being searched, and dropped after.
+   *
+   * @return The root of the view
+   */
+  public Tree view() {
+    Node[] nodes = new Node[labels.length];
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i] = new Node(this, nodes, i);
+    }
+    return nodes[0];
+  }
+
+
+  /**
+   * A node of a {@link CompactTree#view view} of a <code>CompactTree</code>.
+   * Trying to change the tree throws an
+   * <code>UnsupportedOperationException</code>; {@link #deepCopy()} makes
+   * an ordinary tree that can be changed.
+   */
+  public static final class Node extends Tree {
+
+    private static final long serialVersionUID = -2815409412245390623L;
+
+    private final CompactTree tree;
+    /** All of the nodes of the view this node is in, by index */
+    private final Node[] nodes;
+    private final int index;
+
+    private Tree[] kids; // made when first asked for
+    private Label label; // made when first asked for
+
+    private Node(CompactTree tree, Node[] nodes, int index) {
+      this.tree = tree;
+      this.nodes = nodes;
+      this.index = index;
+    }
+
+    @Override
+    public Tree[] children() {
+      if (kids == null) {
+        if (tree.sizes[index] == 1) {
+          kids = EMPTY_TREE_ARRAY;
+        } else {
+          int n = 0;
+          for (int kid = index + 1; kid != NONE; kid = tree.nextSisters[kid]) {
+            n++;
+          }
+          kids = new Tree[n];
+          n = 0;
+          for (int kid = index + 1; kid != NONE; kid = tree.nextSisters[kid]) {
+            kids[n++] = nodes[kid];
+          }
+        }
+      }
+      return kids;
+    }
+
+    @Override
+    public boolean isLeaf() {
+      return tree.sizes[index] == 1;
+    }
+
+    @Override
+    public Tree firstChild() {
+      return (isLeaf() ? null : nodes[index + 1]);
+    }
+
+    @Override
+    public int size() {
+      return tree.sizes[index];
+    }
+
+    @Override
+    public Label label() {
+      if (label == null) {
+        label = new SymbolLabel(tree.labels[index]);
+      }
+      return label;
+    }
+
+    /**
+     * Returns the parent of this node in its view, or <code>null</code>
+     * for the root of the view.
+     */
+    @Override
+    public Tree parent() {
+      int parent = tree.parents[index];
+      return (parent == NONE ? null : nodes[parent]);
+    }
+
+    @Override
+    public Tree parent(Tree root) {
+      if (isIn(root)) {
+        return (this == root ? null : parent());
+      }
+      return super.parent(root);
+    }
+
+    /**
+     * Whether this node dominates t, which is checked by comparing their
+     * indices rather than by searching the subtree.
+     */
+    @Override
+    public boolean dominates(Tree t) {
+      if (t instanceof Node && ((Node) t).nodes == nodes) {
+        int other = ((Node) t).index;
+        return other > index && other < index + tree.sizes[index];
+      }
+      return false;
+    }
+
+    /** Whether this node is root or is dominated by it */
+    private boolean isIn(Tree root) {
+      return root == this || (root instanceof Node && ((Node) root).dominates(this));
+    }
+
+    /**
+     * The number of leaves before this node within root, or -1 if it isn't
+     * within root.
+     */
+    int leftEdge(Tree root) {
+      return (isIn(root) ? tree.yieldStarts[index] - tree.yieldStarts[((Node) root).index] : NONE);
+    }
+
+    /**
+     * The number of leaves before the end of this node within root, or -1
+     * if it isn't within root.
+     */
+    int rightEdge(Tree root) {
+      return (isIn(root) ? tree.yieldEnds[index] - tree.yieldStarts[((Node) root).index] : NONE);
+    }
+
+    @Override
+    public void setChildren(Tree[] children) {
+      throw new UnsupportedOperationException("A CompactTree is read-only");
+    }
+
+    @Override
+    public void setLabel(Label label) {
+      throw new UnsupportedOperationException("A CompactTree is read-only");
+    }
+
+    @Override
+    public void setValue(String value) {
+      throw new UnsupportedOperationException("A CompactTree is read-only");
+    }
+
+    /**
+     * Returns a factory for ordinary trees with {@link SymbolLabel}s, which
+     * is what copies of a view are made with.
+     */
+    @Override
+    public TreeFactory treeFactory() {
+      return new LabeledScoredTreeFactory(SymbolLabel.factory());
+    }
+
+  } // end class Node
+
+}
@@ -0,0 +1,156 @@
+package edu.stanford.nlp.trees;
+
+import java.io.*;
+import java.util.*;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.util.FilePathProcessor;
+import edu.stanford.nlp.util.FileProcessor;
+
+
+/**
+ * A <code>CompactTreebank</code> keeps a corpus in memory, like a
+ * {@link MemoryTreebank}, but as {@link CompactTree}s, for when the trees
+ * are only to be searched.  Iterating over it gives a fresh read-only
+ * {@link CompactTree#view() view} of each tree in turn, so only the tree
+ * being looked at is made of node objects.  Changes made through a view
+ * are refused, and trees can be added but not removed.
+ */
+public final class CompactTreebank extends Treebank implements FileProcessor {
+
+  private final List<CompactTree> trees = new ArrayList<CompactTree>();
+
+  /**
+   * Create a new tree bank.
+   *
+   * @param trf the factory class to be called to create a new
+   *            <code>TreeReader</code>
+   */
+  public CompactTreebank(TreeReaderFactory trf) {
+    super(trf);
+  }
+
+  /**
+   * Create a new tree bank.
+   *
+   * @param trf      the factory class to be called to create a new
+   *                 <code>TreeReader</code>
+   * @param encoding the encoding to use for file access.
+   */
+  public CompactTreebank(TreeReaderFactory trf, String encoding) {
+    super(trf, encoding);
+  }
+
+  /**
+   * Empty a <code>Treebank</code>.
+   */
+  @Override
+  public void clear() {
+    trees.clear();
+  }
+
+  /**
+   * Load trees from given directory.
+   *
+   * @param path file or directory to load from
+   * @param filt a FilenameFilter of files to load
+   */
+  @Override
+  public void loadPath(File path, FileFilter filt) {
+    FilePathProcessor.processPath(path, filt, this);
+  }
+
+  /**
+   * Load a collection of parse trees from the file of given name.
+   * This methods implements the <code>FileProcessor</code> interface.
+   *
+   * @param file file to load a tree from
+   */
+  public void processFile(File file) {
+    Reader r = null;
+    try {
+      r = new BufferedReader(new InputStreamReader(IOUtils.getDecompressingInputStream(file), encoding()));
+      load(r);
+    } catch (IOException e) {
+      System.err.println("loadTree IO Exception: " + e + " in file " + file);
+    } finally {
+      try {
+        if (r != null) {
+          r.close();  // important: closes file even if error!
+        }
+      } catch (IOException e) {
+        // do nothin'
+      }
+    }
+  }
+
+  /**
+   * Load a collection of parse trees from a Reader.
+   *
+   * @param r The reader to read trees from.  (If you want it buffered,
+   *    you should already have buffered it!)
+   */
+  public void load(Reader r) throws IOException {
+    TreeReader tr = treeReaderFactory().newTreeReader(r);
+    Tree pt;
+    while ((pt = tr.readTree()) != null) {
+      add(pt);
+    }
+  }
+
+  /**
+   * Adds a tree, which is encoded as a <code>CompactTree</code>.  Later
+   * changes to the tree are not seen by the treebank.
+   *
+   * @param t The tree to add
+   * @return true
+   */
+  @Override
+  public boolean add(Tree t) {
+    return trees.add(new CompactTree(t));
+  }
+
+  /**
+   * Apply the TreeVisitor tp to a view of each tree in the Treebank.
+   *
+   * @param tp A class that implements the TreeVisitor interface
+   */
+  @Override
+  public void apply(TreeVisitor tp) {
+    for (CompactTree tree : trees) {
+      tp.visitTree(tree.view());
+    }
+  }
+
+  /**
+   * Return an Iterator over views of the trees in the Treebank.
+   */
+  @Override
+  public Iterator<Tree> iterator() {
+    final Iterator<CompactTree> it = trees.iterator();
+    return new Iterator<Tree>() {
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      public Tree next() {
+        return it.next().view();
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException("Treebank is read-only");
+      }
+    };
+  }
+
+  /**
+   * Returns the size of the Treebank.
+   *
+   * @return size How many trees are in the treebank
+   */
+  @Override
+  public int size() {
+    return trees.size();
+  }
+
+}
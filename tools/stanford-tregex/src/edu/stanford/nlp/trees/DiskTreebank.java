@@ -2,9 +2,18 @@ package edu.stanford.nlp.trees;
 
 import java.io.*;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.ling.HasIndex;
+import edu.stanford.nlp.util.Pair;
 
 /**
  * A <code>DiskTreebank</code> is a <code>Collection</code> of
@@ -16,7 +25,13 @@ import edu.stanford.nlp.ling.HasIndex;
  * <p/>
  * If the root Label of the Tree objects built by the TreeReader
  * implements HasIndex, then the filename and index of the tree in
- * a corpus will be inserted as they are read in.
+ * a corpus will be inserted as they are read in.  Files compressed with
+ * gzip or bzip2 are decompressed as they are read.
+ * <p/>
+ * Normally each file is opened and parsed only when its first tree is
+ * asked for.  With {@link #setPrefetchFiles}, iterators instead read and
+ * parse the next few files on background threads while the trees before
+ * them are being used.  The trees still come in the same order.
  *
  * @author Christopher Manning
  * @author Spence Green
@@ -32,6 +47,9 @@ public final class DiskTreebank extends Treebank {
    * Absolute path of the file currently being read.
    */
   private String currentFilename; // = null;
+
+  /** How many files iterators read ahead of the one in use, or 0 for none */
+  private int prefetchFiles; // = 0;
   
   
   /**
@@ -146,6 +164,56 @@ public final class DiskTreebank extends Treebank {
   public void printFileNames() {
     PRINT_FILENAMES = true;
   }
+
+  /**
+   * Sets how many files iterators made after this call read and parse
+   * ahead of the file whose trees are being used, on up to that many
+   * background threads.  The trees of each of those files are kept in
+   * memory until they are used.  {@link #getCurrentFilename()} still gives
+   * the file of the tree most recently primed, as it does otherwise.
+   *
+   * @param files The number of files to read ahead, or 0 to read each
+   *     file only when it is needed (the default)
+   */
+  public void setPrefetchFiles(int files) {
+    if (files < 0) {
+      throw new IllegalArgumentException("Can't prefetch " + files + " files");
+    }
+    prefetchFiles = files;
+  }
+
+  private TreeReader newTreeReader(File file) throws IOException {
+    InputStream in = IOUtils.getDecompressingInputStream(file);
+    return treeReaderFactory().newTreeReader(new BufferedReader(new InputStreamReader(in, encoding())));
+  }
+
+  /** Reads all of the trees in a file, on a prefetching thread */
+  private List<Tree> readFile(File file) throws IOException {
+    List<Tree> trees = new ArrayList<Tree>();
+    TreeReader reader = newTreeReader(file);
+    try {
+      for (Tree t; (t = reader.readTree()) != null; ) {
+        trees.add(t);
+      }
+    } finally {
+      reader.close();
+    }
+    return trees;
+  }
+
+  private static ExecutorService newPrefetchPool(int nThreads) {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(nThreads, nThreads, 1, TimeUnit.SECONDS,
+                                                     new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "DiskTreebank");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    // so that the threads of an iterator that isn't used up go away
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
   
   private class DiskTreebankIterator implements Iterator<Tree> {
     
@@ -164,12 +232,29 @@ public final class DiskTreebank extends Treebank {
     
     private List<File> curFileList;
     private Iterator<File> curPathIter;
+
+    // When prefetching, the files being read ahead, in order, and the
+    // trees of the current file; otherwise all null
+    private final ExecutorService pool;
+    private final Queue<Pair<File,Future<List<Tree>>>> prefetched;
+    private Iterator<Tree> curTrees;
     
-    private DiskTreebankIterator() {
+    private DiskTreebankIterator(int prefetchFiles) {
       localPathList = new ArrayList<File>(filePaths);
       localFilterList = new ArrayList<FileFilter>(fileFilters);
+
+      if (prefetchFiles > 0) {
+        pool = newPrefetchPool(Math.min(prefetchFiles, Runtime.getRuntime().availableProcessors()));
+        prefetched = new ArrayDeque<Pair<File,Future<List<Tree>>>>();
+        for (int i = 0; i < prefetchFiles; i++) {
+          if ( ! prefetchNextFile()) break;
+        }
+      } else {
+        pool = null;
+        prefetched = null;
+      }
       
-      if(primeNextPath() && primeNextFile())
+      if(primeNextFile())
         storedTree = primeNextTree();
     }
     
@@ -206,19 +291,39 @@ public final class DiskTreebank extends Treebank {
       return false;
     }
     
+    /** The next file to read, or null if there are no more */
+    private File nextFile() {
+      if((curPathIter != null && curPathIter.hasNext()) || (primeNextPath() && curPathIter.hasNext()))
+        return curPathIter.next();
+      return null;
+    }
+
+    /** Starts reading the next file in the background, if there is one */
+    private boolean prefetchNextFile() {
+      final File file = nextFile();
+      if(file == null)
+        return false;
+      Future<List<Tree>> trees = pool.submit(new Callable<List<Tree>>() {
+        public List<Tree> call() throws IOException {
+          return readFile(file);
+        }
+      });
+      prefetched.add(new Pair<File,Future<List<Tree>>>(file, trees));
+      return true;
+    }
+
     private boolean primeNextFile() {
+      if(pool != null)
+        return primePrefetchedFile();
       try {
-        if(curPathIter.hasNext() || (primeNextPath() && curPathIter.hasNext())) {
-          currentFile = curPathIter.next();
+        File nextFile = nextFile();
+        if(nextFile != null) {
+          currentFile = nextFile;
           currentFilename = currentFile.getAbsolutePath();
           if(PRINT_FILENAMES) System.err.println(currentFile);
           
           if(tr != null) tr.close();
-          if(currentFile.getPath().endsWith(".gz")){
-            tr = treeReaderFactory().newTreeReader(new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(currentFile)), encoding())));
-          } else {
-            tr = treeReaderFactory().newTreeReader(new BufferedReader(new InputStreamReader(new FileInputStream(currentFile), encoding())));
-          }
+          tr = newTreeReader(currentFile);
           curLineId = 1;
           
           return true;
@@ -237,13 +342,43 @@ public final class DiskTreebank extends Treebank {
       return false;
     }
     
+    private boolean primePrefetchedFile() {
+      Pair<File,Future<List<Tree>>> next = prefetched.poll();
+      if(next == null) {
+        pool.shutdown();
+        return false;
+      }
+      prefetchNextFile();
+
+      currentFile = next.first();
+      currentFilename = currentFile.getAbsolutePath();
+      if(PRINT_FILENAMES) System.err.println(currentFile);
+      try {
+        curTrees = next.second().get().iterator();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        System.err.printf("%s: Error reading from file %s:\n%s\n", this.getClass().getName(), currentFile.getPath(), e.getCause().toString());
+        throw new RuntimeException(e.getCause());
+      }
+      curLineId = 1;
+
+      return true;
+    }
+
+    private Tree readTree() throws IOException {
+      if(pool == null)
+        return tr.readTree();
+      return (curTrees.hasNext() ? curTrees.next() : null);
+    }
+
     private Tree primeNextTree() {
       Tree t = null;
       
       try {
-        t = tr.readTree();
-        if(t == null && primeNextFile()) //Current file is exhausted
-          t = tr.readTree();
+        t = readTree();
+        while(t == null && primeNextFile()) //Current file is exhausted
+          t = readTree();
         
         //Associate this tree with a file and line number
         if(t != null && t.label() != null && t.label() instanceof HasIndex) {
@@ -292,6 +427,6 @@ public final class DiskTreebank extends Treebank {
    */
   @Override
   public Iterator<Tree> iterator() {
-    return new DiskTreebankIterator();
+    return new DiskTreebankIterator(prefetchFiles);
   } 
 }
@@ -0,0 +1,382 @@
+package edu.stanford.nlp.trees;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+
+import edu.stanford.nlp.ling.HasIndex;
+import edu.stanford.nlp.ling.HasWord;
+
+/**
+ * A <code>FastPennTreeReader</code> reads Penn Treebank-style files, giving
+ * exactly the trees a {@link PennTreeReader} with a
+ * {@link PennTreebankTokenizer} gives, but in well under half the time.  Rather
+ * than getting each token as a new String from a tokenizer, it scans the
+ * characters in its own large buffer, and a word is only made into a
+ * String the first time it is seen: after that the same String is taken
+ * from a small table, which also means that labels are shared between the
+ * trees read.  Trees can be read from a <code>Reader</code> or straight
+ * from a <code>CharBuffer</code>, such as a decoded memory-mapped file.
+ * <p/>
+ * As with <code>PennTreeReader</code>, a word is any run of characters
+ * other than whitespace and parentheses, labels go through the
+ * {@link TreeNormalizer}, if there is one, and malformed trees are skipped
+ * with a warning.  Unlike it, an I/O error is thrown rather than being
+ * taken for the end of the file.
+ */
+public class FastPennTreeReader implements TreeReader {
+
+  /**
+   * The buffer and the table of Strings start small, so that reading a
+   * single tree is cheap, and grow to these sizes as more is read.
+   */
+  private static final int INITIAL_BUFFER_SIZE = 1 << 12;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /** How many Strings are kept for reuse; must be a power of 2 */
+  private static final int INITIAL_TABLE_SIZE = 1 << 8;
+  private static final int TABLE_SIZE = 1 << 12;
+
+  private static final char DELETE = '\u007f';
+
+  // the kinds of token
+  private static final int EOF = 0;
+  private static final int LEFT_PAREN = 1;
+  private static final int RIGHT_PAREN = 2;
+  private static final int WORD = 3;
+
+  private final Reader reader;
+  private final CharBuffer source;
+  private final TreeFactory treeFactory;
+  private final TreeNormalizer treeNormalizer;
+
+  private char[] buf;
+  private int pos;
+  private int limit;
+
+  /** The kind of the last token read, and its String if a WORD */
+  private int token;
+  private String word;
+  /** Whether the last token is to be read again */
+  private boolean pushedBack;
+
+  private boolean checkedHeader; // = false;
+
+  private String[] strings = new String[INITIAL_TABLE_SIZE];
+
+  // misuse a list as a stack, as PennTreeReader does
+  private final ArrayList<Tree> stack = new ArrayList<Tree>();
+
+  /**
+   * Read parse trees from a <code>Reader</code>, with a
+   * {@link LabeledScoredTreeFactory} and no <code>TreeNormalizer</code>.
+   *
+   * @param in The <code>Reader</code>, which needn't be buffered
+   */
+  public FastPennTreeReader(Reader in) {
+    this(in, new LabeledScoredTreeFactory());
+  }
+
+  /**
+   * Read parse trees from a <code>Reader</code>.
+   *
+   * @param in The <code>Reader</code>, which needn't be buffered
+   * @param tf TreeFactory -- factory to create some kind of Tree
+   */
+  public FastPennTreeReader(Reader in, TreeFactory tf) {
+    this(in, tf, null);
+  }
+
+  /**
+   * Read parse trees from a <code>Reader</code>.
+   *
+   * @param in The <code>Reader</code>, which needn't be buffered
+   * @param tf TreeFactory -- factory to create some kind of Tree
+   * @param tn the method of normalizing trees, or <code>null</code>
+   */
+  public FastPennTreeReader(Reader in, TreeFactory tf, TreeNormalizer tn) {
+    reader = in;
+    source = null;
+    treeFactory = tf;
+    treeNormalizer = tn;
+    buf = new char[INITIAL_BUFFER_SIZE];
+  }
+
+  /**
+   * Read parse trees from the remaining characters of a
+   * <code>CharBuffer</code>.  If the buffer is backed by an array, the
+   * characters are scanned where they are.
+   *
+   * @param in The characters to read
+   * @param tf TreeFactory -- factory to create some kind of Tree
+   * @param tn the method of normalizing trees, or <code>null</code>
+   */
+  public FastPennTreeReader(CharBuffer in, TreeFactory tf, TreeNormalizer tn) {
+    reader = null;
+    treeFactory = tf;
+    treeNormalizer = tn;
+    if (in.hasArray()) {
+      source = null;
+      buf = in.array();
+      pos = in.arrayOffset() + in.position();
+      limit = in.arrayOffset() + in.limit();
+    } else {
+      source = in;
+      buf = new char[INITIAL_BUFFER_SIZE];
+    }
+  }
+
+  /**
+   * Reads a single tree in standard Penn Treebank format, just as
+   * {@link PennTreeReader#readTree()} does.
+   *
+   * @return A single tree, or <code>null</code> at end of input.
+   */
+  public Tree readTree() throws IOException {
+    if ( ! checkedHeader) {
+      skipHeader();
+      checkedHeader = true;
+    }
+    Tree t = null;
+    while (t == null && peekToken() != EOF) {
+      t = readTreeTokens();
+      if (t != null && treeNormalizer != null && treeFactory != null) {
+        t = treeNormalizer.normalizeWholeTree(t, treeFactory);
+      }
+    }
+    return t;
+  }
+
+  /** Skips past the headers still present in the Brown corpus in Treebank 3 */
+  private void skipHeader() throws IOException {
+    if (peekToken() == WORD && word.startsWith("*x*x*x")) {
+      int foundCount = 0;
+      while (foundCount < 4 && nextToken() != EOF) {
+        if (token == WORD && word.startsWith("*x*x*x")) {
+          foundCount++;
+        }
+      }
+    }
+  }
+
+  private Tree readTreeTokens() throws IOException {
+    int wordIndex = 1;
+    Tree currentTree = null;
+    stack.clear();
+
+    while (nextToken() != EOF) {
+      if (token == LEFT_PAREN) {
+        String label;
+        if (nextToken() == EOF) {
+          throw new IOException("End of token stream encountered before parsing could complete.");
+        } else if (token == LEFT_PAREN) {
+          pushedBack = true;
+          label = null;
+        } else if (token == RIGHT_PAREN) {
+          continue; // skip past empty trees
+        } else {
+          label = word;
+        }
+        if (treeNormalizer != null) {
+          label = treeNormalizer.normalizeNonterminal(label);
+        }
+
+        Tree newTree = treeFactory.newTreeNode(label, null); // dtrs are added below
+        if (currentTree == null) {
+          stack.add(newTree);
+        } else {
+          currentTree.addChild(newTree);
+          stack.add(currentTree);
+        }
+        currentTree = newTree;
+
+      } else if (token == RIGHT_PAREN) {
+        if (stack.isEmpty()) {
+          System.err.println("FastPennTreeReader: warning: file has extra non-matching right parenthesis [ignored]");
+          break;
+        }
+        currentTree = stack.remove(stack.size() - 1);
+        if (stack.isEmpty()) {
+          return currentTree;
+        }
+
+      } else {
+        if (currentTree == null) {
+          // a word outside any tree, as in a README file; ignored quietly
+          break;
+        }
+        String terminal = (treeNormalizer == null) ? word : treeNormalizer.normalizeTerminal(word);
+        Tree leaf = treeFactory.newLeaf(terminal);
+        if (leaf.label() instanceof HasIndex) {
+          ((HasIndex) leaf.label()).setIndex(wordIndex);
+        }
+        if (leaf.label() instanceof HasWord) {
+          ((HasWord) leaf.label()).setWord(leaf.label().value());
+        }
+        wordIndex++;
+        currentTree.addChild(leaf);
+      }
+    }
+
+    if (currentTree != null) {
+      System.err.println("FastPennTreeReader: warning: incomplete tree (extra left parentheses in input): " + currentTree);
+    }
+    return null;
+  }
+
+  private int peekToken() throws IOException {
+    nextToken();
+    pushedBack = true;
+    return token;
+  }
+
+  /**
+   * Reads the next token, setting <code>token</code>, and
+   * <code>word</code> if it is a WORD.
+   *
+   * @return The kind of token read
+   */
+  private int nextToken() throws IOException {
+    if (pushedBack) {
+      pushedBack = false;
+      return token;
+    }
+    char c;
+    do {
+      if (pos == limit && ! fill()) {
+        return token = EOF;
+      }
+      c = buf[pos++];
+    } while (c <= ' ');
+
+    if (c == '(') {
+      return token = LEFT_PAREN;
+    } else if (c == ')') {
+      return token = RIGHT_PAREN;
+    } else if (c == DELETE) {
+      // PennTreebankTokenizer makes it a token by itself
+      word = string(pos - 1, pos);
+      return token = WORD;
+    }
+    int start = pos - 1;
+    while (true) {
+      if (pos == limit) {
+        if (reader == null && source == null) {
+          break; // the buffer is all there is, and isn't ours to move
+        }
+        // keep the start of the word while the buffer is filled
+        int length = pos - start;
+        if (length == buf.length) {
+          char[] bigger = new char[2 * buf.length];
+          System.arraycopy(buf, start, bigger, 0, length);
+          buf = bigger;
+        } else {
+          System.arraycopy(buf, start, buf, 0, length);
+        }
+        start = 0;
+        pos = limit = length;
+        if ( ! fill()) {
+          break;
+        }
+      }
+      c = buf[pos];
+      if (c <= ' ' || c == '(' || c == ')' || c == DELETE) {
+        break;
+      }
+      pos++;
+    }
+    word = string(start, pos);
+    return token = WORD;
+  }
+
+  /**
+   * Reads more characters after those in the buffer.
+   *
+   * @return false if there are none left
+   */
+  private boolean fill() throws IOException {
+    if (pos == buf.length) {
+      pos = limit = 0;
+      if (buf.length < BUFFER_SIZE && (reader != null || source != null)) {
+        // there is a lot to read, so read it in larger pieces
+        buf = new char[2 * buf.length];
+        if (strings.length < TABLE_SIZE) {
+          strings = new String[Math.min(2 * strings.length, TABLE_SIZE)];
+        }
+      }
+    }
+    int n;
+    if (reader != null) {
+      n = reader.read(buf, limit, buf.length - limit);
+    } else if (source != null && source.hasRemaining()) {
+      n = Math.min(source.remaining(), buf.length - limit);
+      source.get(buf, limit, n);
+    } else {
+      n = -1;
+    }
+    if (n <= 0) {
+      return false;
+    }
+    limit += n;
+    return true;
+  }
+
+  /**
+   * Returns the characters from start to end of the buffer as a String,
+   * the same one as the last time they were seen if they are still in
+   * the table.
+   */
+  private String string(int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + buf[i];
+    }
+    int slot = (hash ^ (hash >>> 16)) & (strings.length - 1);
+    String s = strings[slot];
+    if (s != null && s.length() == end - start) {
+      int i = 0;
+      while (i < s.length() && s.charAt(i) == buf[start + i]) {
+        i++;
+      }
+      if (i == s.length()) {
+        return s;
+      }
+    }
+    s = new String(buf, start, end - start);
+    strings[slot] = s;
+    return s;
+  }
+
+  /**
+   * Closes the underlying <code>Reader</code>, if there is one.
+   */
+  public void close() throws IOException {
+    if (reader != null) {
+      reader.close();
+    }
+  }
+
+
+  /**
+   * Loads treebank data from first argument and prints it.
+   *
+   * @param args Array of command-line arguments: specifies a filename
+   */
+  public static void main(String[] args) {
+    try {
+      TreeFactory tf = new LabeledScoredTreeFactory();
+      Reader r = new InputStreamReader(new FileInputStream(args[0]), "UTF-8");
+      TreeReader tr = new FastPennTreeReader(r, tf);
+      Tree t = tr.readTree();
+      while (t != null) {
+        System.out.println(t);
+        System.out.println();
+        t = tr.readTree();
+      }
+      r.close();
+    } catch (IOException ioe) {
+      ioe.printStackTrace();
+    }
+  }
+
+}
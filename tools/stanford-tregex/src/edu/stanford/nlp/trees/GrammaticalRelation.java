@@ -356,6 +356,39 @@ public class GrammaticalRelation implements Comparable<GrammaticalRelation>, Ser
     return nodeList;
   }
 
+  /** Finds the related nodes of every node of a tree at once.  Each of
+   *  the <code>targetPatterns</code> is run over the tree just once, and
+   *  its matches are sorted by the node they are at, so that the
+   *  collection for a node <code>t</code> is the same, in the same order,
+   *  as <code>getRelatedNodes(t, root)</code> would give.  That saves
+   *  searching the whole tree again for each node the relation is
+   *  tried at.
+   *
+   *  @param root The root of the Tree
+   *  @param nodesToParents The parents of the nodes of <code>root</code>,
+   *         shared by the patterns (see {@link TregexPattern#matcher(Tree, IdentityHashMap)})
+   *  @return A map from each node that bears this GR to some node, by
+   *         identity, to the governor nodes it bears it to
+   */
+  public Map<Tree, Collection<Tree>> getAllRelatedNodes(Tree root, IdentityHashMap<Tree, Tree> nodesToParents) {
+    if (root.value() == null) {
+      root.setValue("ROOT");  // as getRelatedNodes does
+    }
+    Map<Tree, Collection<Tree>> nodeLists = new IdentityHashMap<Tree, Collection<Tree>>();
+    for (TregexPattern p : targetPatterns) {
+      TregexMatcher m = p.matcher(root, nodesToParents);
+      while (m.find()) {
+        Collection<Tree> nodeList = nodeLists.get(m.getMatch());
+        if (nodeList == null) {
+          nodeList = new LinkedHashSet<Tree>();
+          nodeLists.put(m.getMatch(), nodeList);
+        }
+        nodeList.add(m.getNode("target"));
+      }
+    }
+    return nodeLists;
+  }
+
   /** Returns <code>true</code> iff the value of <code>Tree</code>
    *  node <code>t</code> matches the <code>sourcePattern</code> for
    *  this <code>GrammaticalRelation</code>, indicating that this
@@ -103,7 +103,7 @@ public abstract class GrammaticalStructure extends TreeGraph {
       relationsLock.lock();
     }
     try {
-      analyzeNode(root, root, relations);
+      analyzeNode(root, new RelatedNodeFinder(root), relations);
     }
     finally {
       if (relationsLock != null) {
@@ -243,24 +243,55 @@ public abstract class GrammaticalStructure extends TreeGraph {
 
 
   // cdm dec 2009: I changed this to automatically fail on preterminal nodes, since they shouldn't match for GR parent patterns.  Should speed it up.
-  private static void analyzeNode(TreeGraphNode t, TreeGraphNode root, Collection<GrammaticalRelation> relations) {
+  private static void analyzeNode(TreeGraphNode t, RelatedNodeFinder finder, Collection<GrammaticalRelation> relations) {
     // if (t.numChildren() > 0) {          // don't do leaves
     if (t.isPhrasal()) {    // don't do leaves or preterminals!
       TreeGraphNode tHigh = t.highestNodeWithSameHead();
       for (GrammaticalRelation egr : relations) {
         if (egr.isApplicable(t)) {
-          for (Tree u : egr.getRelatedNodes(t, root)) {
+          for (Tree u : finder.getRelatedNodes(egr, t)) {
             tHigh.addArc(GrammaticalRelation.getAnnotationClass(egr), (TreeGraphNode) u);
           }
         }
       }
       // now recurse into children
       for (TreeGraphNode kid : t.children()) {
-        analyzeNode(kid, root, relations);
+        analyzeNode(kid, finder, relations);
       }
     }
   }
 
+  /**
+   * Gives the related nodes of the nodes of one tree, as
+   * {@link GrammaticalRelation#getRelatedNodes} does, but searches the
+   * tree with the patterns of a relation only once, the first time the
+   * relation is asked about, and then looks up each node in what was
+   * found.  Adding arcs to the nodes doesn't change what the patterns
+   * match, so what is found stays good while the tree is analyzed.
+   */
+  private static class RelatedNodeFinder {
+
+    private final TreeGraphNode root;
+    private final IdentityHashMap<Tree,Tree> nodesToParents = new IdentityHashMap<Tree,Tree>();
+    private final Map<GrammaticalRelation,Map<Tree,Collection<Tree>>> found =
+      new IdentityHashMap<GrammaticalRelation,Map<Tree,Collection<Tree>>>();
+
+    RelatedNodeFinder(TreeGraphNode root) {
+      this.root = root;
+    }
+
+    Collection<Tree> getRelatedNodes(GrammaticalRelation gr, Tree t) {
+      Map<Tree,Collection<Tree>> related = found.get(gr);
+      if (related == null) {
+        related = gr.getAllRelatedNodes(root, nodesToParents);
+        found.put(gr, related);
+      }
+      Collection<Tree> nodes = related.get(t);
+      return (nodes == null ? Collections.<Tree>emptySet() : nodes);
+    }
+
+  }
+
 
   /**
    * The constructor builds a list of typed dependencies using
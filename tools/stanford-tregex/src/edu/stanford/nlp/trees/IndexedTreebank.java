@@ -0,0 +1,366 @@
+package edu.stanford.nlp.trees;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.HasIndex;
+
+/**
+ * An <code>IndexedTreebank</code> gives access to the trees of a single
+ * file without keeping them in memory.  The first time it is used, it reads
+ * through the file once, noting where each tree starts and ends.  After
+ * that, a tree is only parsed when it is asked for: either in turn, by
+ * iterating over the treebank, or by its number, with {@link #getTree}.
+ * The trees most recently asked for by number are kept in a cache of a
+ * fixed size, so that going back to them is quick, while the memory used
+ * stays the same however large the file is.
+ * <p/>
+ * The trees are found by their brackets, so the file has to be in a
+ * bracketed format, such as that of the Penn Treebank, and it can't be
+ * compressed; use a {@link DiskTreebank} for other files.  As in a
+ * <code>DiskTreebank</code>, if the root Label of the Tree objects built
+ * by the TreeReader implements HasIndex, then the filename and the number
+ * of the tree in the file, counting from 1, are put in it.
+ */
+public final class IndexedTreebank extends Treebank {
+
+  /** How many trees are cached by default */
+  public static final int DEFAULT_CACHE_SIZE = 500;
+
+  /** How many bytes of the file are read at a time */
+  private static final int CHUNK_SIZE = 1 << 20;
+
+  private File file; // = null;
+
+  /** Where each tree starts in the file, and how many bytes long it is; null until the file is indexed */
+  private long[] starts; // = null;
+  private int[] lengths; // = null;
+  private int size; // = 0;
+
+  private Charset charset; // = null;
+
+  /** The trees last asked for by number, least recently used first */
+  private final LinkedHashMap<Integer,Tree> cache;
+
+
+  /**
+   * Create a new IndexedTreebank, which caches up to
+   * {@link #DEFAULT_CACHE_SIZE} trees.
+   *
+   * @param trf      the factory class to be called to create a new
+   *                 <code>TreeReader</code>
+   * @param encoding The charset encoding to use for treebank file decoding
+   */
+  public IndexedTreebank(TreeReaderFactory trf, String encoding) {
+    this(trf, encoding, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Create a new IndexedTreebank.
+   *
+   * @param trf       the factory class to be called to create a new
+   *                  <code>TreeReader</code>
+   * @param encoding  The charset encoding to use for treebank file decoding
+   * @param cacheSize How many of the trees asked for by number to keep
+   */
+  public IndexedTreebank(TreeReaderFactory trf, String encoding, final int cacheSize) {
+    super(trf, encoding);
+    cache = new LinkedHashMap<Integer,Tree>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer,Tree> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Empty a <code>Treebank</code>.
+   */
+  @Override
+  public synchronized void clear() {
+    file = null;
+    starts = null;
+    lengths = null;
+    size = 0;
+    cache.clear();
+  }
+
+  /**
+   * Use the trees of a file.  The file isn't read until the trees are
+   * first asked for.
+   *
+   * @param path The file to read, which can't be a directory
+   * @param filt Ignored, as only a single file is read
+   */
+  @Override
+  public synchronized void loadPath(File path, FileFilter filt) {
+    if (path.isDirectory()) {
+      throw new IllegalArgumentException("IndexedTreebank can only read a single file, not the directory " + path);
+    }
+    clear();
+    file = path;
+  }
+
+  /**
+   * Applies the TreeVisitor to to all trees in the Treebank.
+   *
+   * @param tp A class that can process trees.
+   */
+  @Override
+  public void apply(TreeVisitor tp) {
+    for (Tree t : this) {
+      tp.visitTree(t);
+    }
+  }
+
+  /**
+   * Returns the number of trees in the file, indexing it if need be.
+   * Bracketings which the TreeReader doesn't make a tree of are counted
+   * too, though they aren't iterated over.
+   */
+  @Override
+  public synchronized int size() {
+    index();
+    return size;
+  }
+
+  /**
+   * Returns the file the trees are read from.
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Returns where a tree starts in the file, indexing it if need be.
+   *
+   * @param n The number of the tree in the file, counting from 1
+   * @return The offset of its first byte
+   */
+  public synchronized long getStart(int n) {
+    index();
+    if (n < 1 || n > size) {
+      throw new IndexOutOfBoundsException("Tree " + n + " of " + size + " in " + file);
+    }
+    return starts[n - 1];
+  }
+
+  /**
+   * Returns how many bytes of the file a tree takes up, indexing it if
+   * need be.
+   *
+   * @param n The number of the tree in the file, counting from 1
+   * @return The length of its bracketing
+   */
+  public synchronized int getLength(int n) {
+    index();
+    if (n < 1 || n > size) {
+      throw new IndexOutOfBoundsException("Tree " + n + " of " + size + " in " + file);
+    }
+    return lengths[n - 1];
+  }
+
+  /**
+   * Returns a tree of the file, parsing it unless it is in the cache.  A
+   * new copy of the tree is returned each time, so it can be changed.
+   *
+   * @param n The number of the tree in the file, counting from 1
+   * @return The tree, or <code>null</code> if the TreeReader doesn't make
+   *     a tree of its bracketing
+   */
+  public synchronized Tree getTree(int n) {
+    index();
+    if (n < 1 || n > size) {
+      throw new IndexOutOfBoundsException("Tree " + n + " of " + size + " in " + file);
+    }
+    Tree t = cache.get(n);
+    if (t == null) {
+      try {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+          byte[] bytes = new byte[lengths[n - 1]];
+          raf.seek(starts[n - 1]);
+          raf.readFully(bytes);
+          t = parse(bytes, 0, bytes.length, n);
+        } finally {
+          raf.close();
+        }
+      } catch (IOException e) {
+        throw new RuntimeIOException(e);
+      }
+      if (t == null) {
+        return null;
+      }
+      cache.put(n, t);
+    }
+    return t.deepCopy();
+  }
+
+  /** Finds where each tree is in the file, if that hasn't been done */
+  private void index() {
+    if (starts != null || file == null) {
+      return;
+    }
+    long[] newStarts = new long[1024];
+    int[] newLengths = new int[1024];
+    int n = 0;
+    try {
+      InputStream in = new FileInputStream(file);
+      try {
+        // Brackets are single bytes in every encoding used for treebanks,
+        // so the trees can be found without decoding the file.  Empty
+        // bracketings are skipped, as tree readers skip them.
+        byte[] buf = new byte[1 << 16];
+        long pos = 0;
+        long start = 0;
+        int depth = 0;
+        boolean empty = true;
+        for (int read; (read = in.read(buf)) >= 0; ) {
+          for (int i = 0; i < read; i++, pos++) {
+            byte b = buf[i];
+            if (b == '(') {
+              if (depth == 0) {
+                start = pos;
+                empty = true;
+              } else {
+                empty = false;
+              }
+              depth++;
+            } else if (b == ')') {
+              if (depth > 0) {
+                depth--;
+                if (depth == 0 && ! empty) {
+                  if (n == newStarts.length) {
+                    newStarts = Arrays.copyOf(newStarts, 2 * n);
+                    newLengths = Arrays.copyOf(newLengths, 2 * n);
+                  }
+                  newStarts[n] = start;
+                  newLengths[n] = (int) (pos + 1 - start);
+                  n++;
+                }
+              }
+            } else if (b < 0 || b > ' ') {
+              empty = false;
+            }
+          }
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      System.err.printf("%s: Error reading from file %s:\n%s\n", this.getClass().getName(), file.getPath(), e.toString());
+      throw new RuntimeIOException(e);
+    }
+    starts = newStarts;
+    lengths = newLengths;
+    size = n;
+  }
+
+  /** Parses the bytes of tree n of the file */
+  private Tree parse(byte[] bytes, int offset, int length, int n) throws IOException {
+    if (charset == null) {
+      charset = Charset.forName(encoding());
+    }
+    String s = new String(bytes, offset, length, charset);
+    TreeReader tr = treeReaderFactory().newTreeReader(new StringReader(s));
+    Tree t;
+    try {
+      t = tr.readTree();
+    } finally {
+      tr.close();
+    }
+    if (t != null && t.label() instanceof HasIndex) {
+      HasIndex lab = (HasIndex) t.label();
+      lab.setSentIndex(n);
+      lab.setDocID(file.getName());
+    }
+    return t;
+  }
+
+  /**
+   * Returns an iterator over the trees, which parses them in turn, reading
+   * the file a large chunk at a time.  The file is only kept open while a
+   * chunk is read, so an iterator needn't be used up.  The cache isn't
+   * used or changed.
+   */
+  @Override
+  public Iterator<Tree> iterator() {
+    final long[] starts;
+    final int[] lengths;
+    final int size;
+    synchronized (this) {
+      index();
+      starts = this.starts;
+      lengths = this.lengths;
+      size = this.size;
+    }
+    return new Iterator<Tree>() {
+
+      /** The chunk of the file, the tree to parse next, and the tree that has been parsed */
+      private byte[] chunk; // = null;
+      private long chunkStart;
+      private int chunkLength;
+      private int next; // = 0;
+      private Tree storedTree = primeNextTree();
+
+      private Tree primeNextTree() {
+        try {
+          while (next < size) {
+            int n = next++;
+            if (chunk == null || starts[n] < chunkStart || starts[n] + lengths[n] > chunkStart + chunkLength) {
+              readChunk(n);
+            }
+            Tree t = parse(chunk, (int) (starts[n] - chunkStart), lengths[n], n + 1);
+            if (t != null) {
+              return t;
+            }
+          }
+        } catch (IOException e) {
+          System.err.printf("%s: Error reading from file %s:\n%s\n", IndexedTreebank.class.getName(), file.getPath(), e.toString());
+          throw new RuntimeIOException(e);
+        }
+        return null;
+      }
+
+      /** Reads the chunk of the file from the start of tree n, which is at least long enough for it */
+      private void readChunk(int n) throws IOException {
+        int length = Math.max(lengths[n], CHUNK_SIZE);
+        if (chunk == null || chunk.length < length) {
+          chunk = new byte[length];
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+          chunkStart = starts[n];
+          raf.seek(chunkStart);
+          chunkLength = 0;
+          for (int read; chunkLength < length && (read = raf.read(chunk, chunkLength, length - chunkLength)) >= 0; ) {
+            chunkLength += read;
+          }
+        } finally {
+          raf.close();
+        }
+      }
+
+      public boolean hasNext() {
+        return storedTree != null;
+      }
+
+      public Tree next() {
+        if (storedTree == null) {
+          throw new NoSuchElementException();
+        }
+        Tree ret = storedTree;
+        storedTree = primeNextTree();
+        return ret;
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+}
@@ -46,6 +46,6 @@ public class LabeledScoredTreeReaderFactory implements TreeReaderFactory {
    * construction).
    */
   public TreeReader newTreeReader(Reader in) {
-    return new PennTreeReader(in, new LabeledScoredTreeFactory(lf), tm);
+    return new FastPennTreeReader(in, new LabeledScoredTreeFactory(lf), tm);
   }
 }
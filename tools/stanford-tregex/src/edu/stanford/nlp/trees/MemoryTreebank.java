@@ -3,6 +3,7 @@ package edu.stanford.nlp.trees;
 import java.io.*;
 import java.util.*;
 
+import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.HasIndex;
@@ -207,7 +208,7 @@ public final class MemoryTreebank extends Treebank implements FileProcessor, Lis
         System.err.println(file);
       }
       // could throw an IO exception if can't open for reading
-      tr = treeReaderFactory().newTreeReader(new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding())));
+      tr = treeReaderFactory().newTreeReader(new BufferedReader(new InputStreamReader(IOUtils.getDecompressingInputStream(file), encoding())));
       int sentIndex=0;
       Tree pt;
       while ((pt = tr.readTree()) != null) {
@@ -0,0 +1,53 @@
+package edu.stanford.nlp.trees;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.Label;
+import edu.stanford.nlp.ling.LabelFactory;
+
+import java.util.List;
+
+/**
+ * A <code>ParentedTreeFactory</code> acts as a factory for creating
+ * {@link ParentedTreeNode}s, labeled, scored trees whose nodes know their
+ * parents.  Unless another <code>LabelFactory</code> is supplied, it will
+ * use a <code>CoreLabel</code> by default.
+ */
+public class ParentedTreeFactory implements TreeFactory {
+
+  private final LabelFactory lf;
+
+  /**
+   * Make a TreeFactory that produces ParentedTreeNode trees with
+   * <code>CoreLabel</code> labels.
+   */
+  public ParentedTreeFactory() {
+    this(CoreLabel.factory());
+  }
+
+  /**
+   * Make a TreeFactory that produces ParentedTreeNode trees, where the
+   * labels are as specified by the user.
+   *
+   * @param lf the <code>LabelFactory</code> to be used to create labels
+   */
+  public ParentedTreeFactory(LabelFactory lf) {
+    this.lf = lf;
+  }
+
+  public Tree newLeaf(final String word) {
+    return new ParentedTreeNode(lf.newLabel(word));
+  }
+
+  public Tree newLeaf(Label label) {
+    return new ParentedTreeNode(lf.newLabel(label));
+  }
+
+  public Tree newTreeNode(final String parent, final List<Tree> children) {
+    return new ParentedTreeNode(lf.newLabel(parent), children);
+  }
+
+  public Tree newTreeNode(Label parentLabel, List<Tree> children) {
+    return new ParentedTreeNode(lf.newLabel(parentLabel), children);
+  }
+
+}
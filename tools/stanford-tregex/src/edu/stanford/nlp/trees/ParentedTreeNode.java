@@ -0,0 +1,171 @@
+package edu.stanford.nlp.trees;
+
+import java.util.List;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.Label;
+import edu.stanford.nlp.ling.LabelFactory;
+
+/**
+ * A <code>ParentedTreeNode</code> is a {@link LabeledScoredTreeNode} that
+ * knows its parent.  Whenever the children of a node are set, each child is
+ * told its new parent and its position among its sisters, so the links stay
+ * up to date under <code>setChildren</code>, <code>setChild</code>,
+ * <code>addChild</code>, <code>removeChild</code> and
+ * <code>insertDtr</code>.  As a result {@link #parent()} takes constant
+ * time, and {@link #parent(Tree)} only has to walk up to the root rather
+ * than search the whole tree.
+ * <p>
+ * A node should only be the child of one parent at a time.  If it is put
+ * under a node of another kind, which doesn't tell its children about it,
+ * or the array of children of its parent is changed directly,
+ * <code>parent()</code> returns <code>null</code> rather than an out of date
+ * parent, and <code>parent(Tree)</code> falls back to searching the tree.
+ */
+public class ParentedTreeNode extends LabeledScoredTreeNode {
+
+  private static final long serialVersionUID = 3417309742389154209L;
+
+  /** The node whose children this node was last made one of */
+  private ParentedTreeNode parent;
+
+  /** The position of this node among the children of <code>parent</code> */
+  private int childIndex;
+
+  /**
+   * Create an empty parse tree.
+   */
+  public ParentedTreeNode() {
+    super();
+  }
+
+  /**
+   * Create a leaf parse tree with given word.
+   *
+   * @param label the <code>Label</code> representing the <i>word</i> for
+   *              this new tree leaf.
+   */
+  public ParentedTreeNode(Label label) {
+    super(label);
+  }
+
+  /**
+   * Create a leaf parse tree with given word and score.
+   *
+   * @param label The <code>Label</code> representing the <i>word</i> for
+   *              this new tree leaf.
+   * @param score The score for the node
+   */
+  public ParentedTreeNode(Label label, double score) {
+    super(label, score);
+  }
+
+  /**
+   * Create parse tree with given root and array of daughter trees.
+   *
+   * @param label             root label of tree to construct.
+   * @param daughterTreesList List of daughter trees to construct.
+   */
+  public ParentedTreeNode(Label label, List<Tree> daughterTreesList) {
+    super(label, daughterTreesList);
+  }
+
+  /**
+   * Sets the children of this <code>Tree</code>, and makes this node the
+   * parent of each of them.  Children that are no longer among them no
+   * longer have a parent.
+   *
+   * @param children An array of child trees
+   */
+  @Override
+  public void setChildren(Tree[] children) {
+    // called from the superclass constructor, before there are any children
+    Tree[] oldKids = children();
+    if (oldKids != null) {
+      for (Tree kid : oldKids) {
+        disown(kid);
+      }
+    }
+    super.setChildren(children);
+    Tree[] kids = children();
+    for (int i = 0; i < kids.length; i++) {
+      adopt(kids[i], i);
+    }
+  }
+
+  @Override
+  public Tree setChild(int i, Tree t) {
+    Tree old = super.setChild(i, t);
+    disown(old);
+    adopt(t, i);
+    return old;
+  }
+
+  private void adopt(Tree kid, int i) {
+    if (kid instanceof ParentedTreeNode) {
+      ParentedTreeNode node = (ParentedTreeNode) kid;
+      node.parent = this;
+      node.childIndex = i;
+    }
+  }
+
+  private void disown(Tree kid) {
+    if (kid instanceof ParentedTreeNode && ((ParentedTreeNode) kid).parent == this) {
+      ((ParentedTreeNode) kid).parent = null;
+    }
+  }
+
+  /**
+   * Returns the parent of this node, or <code>null</code> if it is a root
+   * or its parent isn't known (see the class comment).
+   *
+   * @return The parent <code>Tree</code> node or <code>null</code>
+   */
+  @Override
+  public Tree parent() {
+    if (parent != null) {
+      Tree[] kids = parent.children();
+      if (childIndex < kids.length && kids[childIndex] == this) {
+        return parent;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the parent of this node within the tree rooted at
+   * <code>root</code>, or <code>null</code> if this node is
+   * <code>root</code> or is not within it.
+   *
+   * @param root The root node of the whole Tree
+   * @return the parent <code>Tree</code> node if any;
+   *         else <code>null</code>
+   */
+  @Override
+  public Tree parent(Tree root) {
+    if (this == root) {
+      return null;
+    }
+    Tree parent = parent();
+    for (Tree ancestor = parent; ancestor != null; ancestor = ancestor.parent()) {
+      if (ancestor == root) {
+        return parent;
+      }
+    }
+    return super.parent(root);
+  }
+
+  /**
+   * Return a <code>TreeFactory</code> that produces
+   * <code>ParentedTreeNode</code>s, with labels made by the
+   * <code>LabelFactory</code> of the label of this node.
+   *
+   * @return a factory to produce trees that know their parents
+   */
+  @Override
+  public TreeFactory treeFactory() {
+    LabelFactory lf = (label() == null) ? CoreLabel.factory() : label().labelFactory();
+    return new ParentedTreeFactory(lf);
+  }
+
+}
@@ -2,7 +2,8 @@ package edu.stanford.nlp.trees;
 
 import java.io.Reader;
 
-/** Vends {@link PennTreeReader} objects.
+/** Vends {@link FastPennTreeReader} objects, which read the same trees
+ *  as a {@link PennTreeReader} does, only faster.
  *
  *  @author Roger Levy (rog@nlp.stanford.edu)
  */
@@ -13,7 +14,7 @@ public class PennTreeReaderFactory implements TreeReaderFactory {
 
   /**
    * Default constructor; uses a {@link LabeledScoredTreeFactory},
-   * with StringLabels, a {@link PennTreebankTokenizer},
+   * with StringLabels,
    * and a {@link TreeNormalizer}.
    */
   public PennTreeReaderFactory() {
@@ -22,7 +23,7 @@ public class PennTreeReaderFactory implements TreeReaderFactory {
 
   /**
    * Specify your own {@link TreeFactory};
-   * uses a {@link PennTreebankTokenizer}, and a {@link TreeNormalizer}.
+   * uses a {@link TreeNormalizer}.
    *
    * @param tf The TreeFactory to use in building Tree objects to return.
    */
@@ -33,7 +34,7 @@ public class PennTreeReaderFactory implements TreeReaderFactory {
 
   /**
    * Specify your own {@link TreeNormalizer};
-   * uses a {@link PennTreebankTokenizer}, and a {@link LabeledScoredTreeFactory}.
+   * uses a {@link LabeledScoredTreeFactory}.
    *
    * @param tn The TreeNormalizer to use in building Tree objects to return.
    */
@@ -44,7 +45,7 @@ public class PennTreeReaderFactory implements TreeReaderFactory {
 
   /**
    * Specify your own {@link TreeFactory};
-   * uses a {@link PennTreebankTokenizer}, and a {@link TreeNormalizer}.
+   * uses a {@link TreeNormalizer}.
    *
    * @param tf The TreeFactory to use in building Tree objects to return.
    * @param tn The TreeNormalizer to use
@@ -56,7 +57,7 @@ public class PennTreeReaderFactory implements TreeReaderFactory {
 
 
   public TreeReader newTreeReader(Reader in) {
-    return new PennTreeReader(in, tf, tn, new PennTreebankTokenizer(in));
+    return new FastPennTreeReader(in, tf, tn);
   }
 
 }
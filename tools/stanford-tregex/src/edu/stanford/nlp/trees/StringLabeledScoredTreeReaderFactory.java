@@ -21,7 +21,7 @@ public class StringLabeledScoredTreeReaderFactory implements TreeReaderFactory {
    * objects, with <code>StringLabel</code> labels.
    */
   public TreeReader newTreeReader(Reader in) {
-    return new PennTreeReader(in, new LabeledScoredTreeFactory(new StringLabelFactory()));
+    return new FastPennTreeReader(in, new LabeledScoredTreeFactory(new StringLabelFactory()));
   }
 
 }
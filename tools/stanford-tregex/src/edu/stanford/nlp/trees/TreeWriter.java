@@ -0,0 +1,165 @@
+package edu.stanford.nlp.trees;
+
+import java.io.*;
+
+/**
+ * A <code>TreeWriter</code> is a <code>PrintWriter</code> for printing many
+ * trees quickly in the <code>penn</code> or <code>oneline</code> format of
+ * {@link TreePrint}, with exactly the same output.  Rather than copying each
+ * tree and printing it a piece at a time, as <code>TreePrint</code> does, it
+ * lays the tree out in a reused buffer and writes it in one go to a large
+ * buffered stream, which is only flushed as its {@link FlushPolicy} says.
+ * Since it is a <code>PrintWriter</code>, anything else can be printed to it
+ * as well, in between the trees.
+ * <p/>
+ * Remember to {@link #flush()} or {@link #close()} the writer when done.
+ */
+public class TreeWriter extends PrintWriter {
+
+  /** When a <code>TreeWriter</code> flushes its output */
+  public enum FlushPolicy {
+    /** After each tree, so that each can be seen as soon as it is printed */
+    EACH_TREE,
+    /** Only when the buffer is full, or when asked to, which is fastest */
+    WHEN_FULL
+  }
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private static final String lineSeparator = System.getProperty("line.separator");
+
+  private final boolean penn;
+  private final FlushPolicy flushPolicy;
+
+  /** Where a tree is laid out before being written */
+  private final StringBuilder sb = new StringBuilder(BUFFER_SIZE);
+  private char[] chars = new char[BUFFER_SIZE];
+
+  /**
+   * Makes a writer that prints trees in a format to an output stream.
+   *
+   * @param out The stream to print to
+   * @param encoding The character encoding to print in
+   * @param format Either <code>penn</code> or <code>oneline</code>
+   * @param flushPolicy When to flush the output
+   */
+  public TreeWriter(OutputStream out, String encoding, String format, FlushPolicy flushPolicy) throws UnsupportedEncodingException {
+    this(new OutputStreamWriter(out, encoding), format, flushPolicy);
+  }
+
+  /**
+   * Makes a writer that prints trees in a format to a Writer.
+   *
+   * @param out The Writer to print to, which this one buffers
+   * @param format Either <code>penn</code> or <code>oneline</code>
+   * @param flushPolicy When to flush the output
+   */
+  public TreeWriter(Writer out, String format, FlushPolicy flushPolicy) {
+    super(new BufferedWriter(out, BUFFER_SIZE), false);
+    if ( ! handles(format)) {
+      throw new IllegalArgumentException("TreeWriter can't print trees in format " + format);
+    }
+    this.penn = format.replace(",", "").trim().equals("penn");
+    this.flushPolicy = flushPolicy;
+  }
+
+  /**
+   * Whether a <code>TreeWriter</code> can print trees in the given
+   * {@link TreePrint} formats, which it can if they are just one of
+   * <code>penn</code> and <code>oneline</code>.
+   *
+   * @param formats A comma separated list of formats, as for <code>TreePrint</code>
+   */
+  public static boolean handles(String formats) {
+    String format = formats.replace(",", "").trim();
+    return format.equals("penn") || format.equals("oneline");
+  }
+
+  /**
+   * Prints a tree, as <code>TreePrint.printTree</code> would, followed by
+   * a blank line in the <code>penn</code> format.
+   *
+   * @param t The tree to print, or <code>null</code> for a tree that
+   *     couldn't be made
+   */
+  public void printTree(Tree t) {
+    if (t == null) {
+      println("SENTENCE_SKIPPED_OR_UNPARSABLE");
+    } else {
+      sb.setLength(0);
+      if (penn) {
+        display(t, 0, false, false, false, true);
+        sb.append(lineSeparator).append(lineSeparator);
+      } else {
+        oneline(t);
+        sb.append(lineSeparator);
+      }
+      int length = sb.length();
+      if (chars.length < length) {
+        chars = new char[Math.max(length, 2 * chars.length)];
+      }
+      sb.getChars(0, length, chars, 0);
+      write(chars, 0, length);
+    }
+    if (flushPolicy == FlushPolicy.EACH_TREE) {
+      flush();
+    }
+  }
+
+  /** Lays out a tree on one line, as {@link Tree#toString()} does */
+  private void oneline(Tree t) {
+    if (t.isLeaf()) {
+      sb.append(t.value());
+    } else {
+      sb.append('(');
+      String value = t.value();
+      if (value != null) {
+        sb.append(value);
+      }
+      for (Tree kid : t.children()) {
+        sb.append(' ');
+        oneline(kid);
+      }
+      sb.append(')');
+    }
+  }
+
+  /** Lays out a node in Penn Treebank style, as {@link Tree#pennPrint()} does */
+  private void display(Tree t, int indent, boolean parentLabelNull, boolean firstSibling, boolean leftSiblingPreTerminal, boolean topLevel) {
+    boolean preTerminal = t.isPreTerminal();
+    String value = t.value();
+    // the condition for staying on the same line in Penn Treebank
+    boolean suppressIndent = (parentLabelNull || (firstSibling && preTerminal) || (leftSiblingPreTerminal && preTerminal && (value == null || ! value.startsWith("CC"))));
+    if (suppressIndent) {
+      sb.append(' ');
+    } else {
+      if ( ! topLevel) {
+        sb.append(lineSeparator);
+      }
+      for (int i = 0; i < indent; i++) {
+        sb.append("  ");
+      }
+    }
+    if (preTerminal || t.isLeaf()) {
+      oneline(t);
+      return;
+    }
+    sb.append('(');
+    if (value != null) {
+      sb.append(value);
+    }
+    boolean first = true;
+    boolean leftSibIsPreTerm = true;  // counts as true at beginning
+    for (Tree kid : t.children()) {
+      display(kid, indent + 1, value == null, first, leftSibIsPreTerm, false);
+      leftSibIsPreTerm = kid.isPreTerminal();
+      // CC is a special case for English, but leave it in so we can exactly match PTB3 tree formatting
+      if (kid.value() != null && kid.value().startsWith("CC")) {
+        leftSibIsPreTerm = false;
+      }
+      first = false;
+    }
+    sb.append(')');
+  }
+
+}
@@ -165,7 +165,7 @@ public abstract class Treebank extends AbstractCollection<Tree> {
    * @param recursively descend into subdirectories as well
    */
   public void loadPath(String pathName, String suffix, boolean recursively) {
-    loadPath(new File(pathName), new ExtensionFileFilter(suffix, recursively));
+    loadPath(new File(pathName), new ExtensionFileFilter(suffix, recursively, true));
   }
 
 
@@ -177,7 +177,7 @@ public abstract class Treebank extends AbstractCollection<Tree> {
    * @param recursively descend into subdirectories as well
    */
   public void loadPath(File path, String suffix, boolean recursively) {
-    loadPath(path, new ExtensionFileFilter(suffix, recursively));
+    loadPath(path, new ExtensionFileFilter(suffix, recursively, true));
   }
 
 
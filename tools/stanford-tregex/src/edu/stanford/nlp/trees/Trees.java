@@ -29,6 +29,12 @@ public class Trees {
    * material preceding <i>t</i>.
    */
   public static int leftEdge(Tree t, Tree root) {
+    if (t instanceof CompactTree.Node) {
+      int edge = ((CompactTree.Node) t).leftEdge(root);
+      if (edge >= 0) {
+        return edge;
+      }
+    }
     MutableInteger i = new MutableInteger(0);
     if (leftEdge(t, root, i)) {
       return i.intValue();
@@ -63,6 +69,12 @@ public class Trees {
    * contained in <i>t</i>.
    */
   public static int rightEdge(Tree t, Tree root) {
+    if (t instanceof CompactTree.Node) {
+      int edge = ((CompactTree.Node) t).rightEdge(root);
+      if (edge >= 0) {
+        return edge;
+      }
+    }
     MutableInteger i = new MutableInteger(root.yield().size());
     if (rightEdge(t, root, i)) {
       return i.intValue();
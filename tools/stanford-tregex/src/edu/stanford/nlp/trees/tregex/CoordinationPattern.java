@@ -2,10 +2,12 @@ package edu.stanford.nlp.trees.tregex;
 
 import edu.stanford.nlp.trees.Tree;
 
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 class CoordinationPattern extends TregexPattern {
 
@@ -66,6 +68,47 @@ class CoordinationPattern extends TregexPattern {
     return changesVariables;
   }
 
+  @Override
+  void collectRequiredLabels(Set<String> labels, Set<String> prefixes) {
+    if (isNegated() || isOptional()) {
+      return;
+    }
+    if (isConj) {
+      for (TregexPattern child : children) {
+        child.collectRequiredLabels(labels, prefixes);
+      }
+    } else {
+      // only the labels and prefixes that every alternative requires
+      Set<String> commonLabels = null;
+      Set<String> commonPrefixes = null;
+      for (TregexPattern child : children) {
+        Set<String> childLabels = new HashSet<String>();
+        Set<String> childPrefixes = new HashSet<String>();
+        child.collectRequiredLabels(childLabels, childPrefixes);
+        if (commonLabels == null) {
+          commonLabels = childLabels;
+          commonPrefixes = childPrefixes;
+        } else {
+          commonLabels.retainAll(childLabels);
+          commonPrefixes.retainAll(childPrefixes);
+        }
+      }
+      labels.addAll(commonLabels);
+      prefixes.addAll(commonPrefixes);
+    }
+  }
+
+  @Override
+  int ancestorReach(int level, int reach) {
+    for (TregexPattern child : children) {
+      reach = child.ancestorReach(level, reach);
+      if (reach < 0) {
+        return -1;
+      }
+    }
+    return reach;
+  }
+
   @Override
   public TregexMatcher matcher(Tree root, Tree tree, 
                                IdentityHashMap<Tree, Tree> nodesToParents,
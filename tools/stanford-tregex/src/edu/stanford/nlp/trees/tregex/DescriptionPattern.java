@@ -1,8 +1,11 @@
 package edu.stanford.nlp.trees.tregex;
 
+import edu.stanford.nlp.ling.Label;
+import edu.stanford.nlp.ling.SymbolLabel;
 import edu.stanford.nlp.util.Function;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.SymbolTable;
 
 import java.util.*;
 import java.util.regex.Matcher;
@@ -11,14 +14,26 @@ import java.util.regex.Pattern;
 class DescriptionPattern extends TregexPattern {
 
   enum DescriptionMode {
-    PATTERN, EXACT, ANYTHING
+    PATTERN, EXACT, EXACT_SET, PREFIX, SUFFIX, ANYTHING
   }
 
+  /** Alternatives in a description that are plain words, not regexes */
+  private static final Pattern literalAlternativesPattern = Pattern.compile("[^\\\\^$.|?*+()\\[\\]{}]*(?:\\|[^\\\\^$.|?*+()\\[\\]{}]*)+");
+
+  /** A regex description that is a plain word, perhaps anchored at either end */
+  private static final Pattern literalRegexPattern = Pattern.compile("/(\\^?)([^\\\\^$.|?*+()\\[\\]{}]+)(\\$?)/");
+
+  /** A regex description that is a list of plain words to match the whole label */
+  private static final Pattern anchoredAlternativesPattern = Pattern.compile("/\\^\\((?:\\?:)?(" + literalAlternativesPattern.pattern() + ")\\)\\$/");
+
   private final Relation rel;
   private final boolean negDesc;
 
   private final DescriptionMode descriptionMode;
-  private final String exactMatch;
+  private final String exactMatch; // or the prefix or suffix to match, in those modes
+  private final Set<String> exactMatches;
+  /** The id of exactMatch in the global SymbolTable, looked up when first needed */
+  private transient int exactSymbol; // = SymbolTable.NO_SYMBOL;
   private final Pattern descPattern;
 
   private final String stringDesc;
@@ -55,20 +70,58 @@ class DescriptionPattern extends TregexPattern {
         descriptionMode = DescriptionMode.ANYTHING;
         descPattern = null;
         exactMatch = null;
+        exactMatches = null;
       } else if (desc.matches("/.*/")) {
-        descriptionMode = DescriptionMode.PATTERN;
+        // regexes that only look for a word, such as /^NN/, are checked
+        // with String methods, unless they capture variables.  The
+        // regex is still kept, so that in all other respects the node
+        // is treated as one with a regex
         descPattern = Pattern.compile(desc.substring(1, desc.length() - 1));
+        Matcher literal = literalRegexPattern.matcher(desc);
+        Matcher alternatives = anchoredAlternativesPattern.matcher(desc);
+        if ( ! variableGroups.isEmpty()) {
+          descriptionMode = DescriptionMode.PATTERN;
+          exactMatch = null;
+          exactMatches = null;
+        } else if (literal.matches() && (literal.group(1).length() > 0 || literal.group(3).length() > 0)) {
+          // labels can't contain newlines, so $ only matches at the end
+          if (literal.group(1).length() == 0) {
+            descriptionMode = DescriptionMode.SUFFIX;
+          } else if (literal.group(3).length() == 0) {
+            descriptionMode = DescriptionMode.PREFIX;
+          } else {
+            descriptionMode = DescriptionMode.EXACT;
+          }
+          exactMatch = literal.group(2);
+          exactMatches = null;
+        } else if (alternatives.matches()) {
+          descriptionMode = DescriptionMode.EXACT_SET;
+          exactMatch = null;
+          exactMatches = new HashSet<String>(Arrays.asList(alternatives.group(1).split("\\|", -1)));
+        } else {
+          descriptionMode = DescriptionMode.PATTERN;
+          exactMatch = null;
+          exactMatches = null;
+        }
+      } else if (literalAlternativesPattern.matcher(desc).matches()) {
+        // a list of words, as in NN|NNS or a lexicon of verbs: look the
+        // label up in a set rather than running a regex over it
+        descriptionMode = DescriptionMode.EXACT_SET;
+        descPattern = null;
         exactMatch = null;
+        exactMatches = new HashSet<String>(Arrays.asList(desc.split("\\|", -1)));
       } else if (desc.indexOf('|') >= 0) {
         // patterns which contain ORs are a special case; we promote
         // those to regex match
         descriptionMode = DescriptionMode.PATTERN;
         descPattern = Pattern.compile("^(" + desc + ")$");
         exactMatch = null;
+        exactMatches = null;
       } else { // raw description
         descriptionMode = DescriptionMode.EXACT;
         descPattern = null;
         exactMatch = desc;
+        exactMatches = null;
       }
     } else {
       assert name != null;
@@ -76,6 +129,7 @@ class DescriptionPattern extends TregexPattern {
       descriptionMode = null;
       descPattern = null;
       exactMatch = null;
+      exactMatches = null;
     }
     this.name = name;
     setChild(null);
@@ -84,6 +138,13 @@ class DescriptionPattern extends TregexPattern {
     this.variableGroups = variableGroups;
   }
 
+  private int exactSymbol() {
+    if (exactSymbol == SymbolTable.NO_SYMBOL) {
+      exactSymbol = SymbolTable.getGlobal().symbol(exactMatch);
+    }
+    return exactSymbol;
+  }
+
   @Override
   public String localString() {
     return rel.toString() + ' ' + (negDesc ? "!" : "") + (basicCatFunction != null ? "@" : "") + stringDesc + (name == null ? "" : '=' + name);
@@ -147,6 +208,45 @@ class DescriptionPattern extends TregexPattern {
     return changesVariables;
   }
 
+  @Override
+  void collectRequiredLabels(Set<String> labels, Set<String> prefixes) {
+    if (isNegated() || isOptional()) {
+      return;
+    }
+    if ( ! negDesc && basicCatFunction == null) {
+      if (descriptionMode == DescriptionMode.EXACT) {
+        labels.add(exactMatch);
+      } else if (descriptionMode == DescriptionMode.PREFIX) {
+        prefixes.add(exactMatch);
+      }
+    }
+    if (child != null) {
+      child.collectRequiredLabels(labels, prefixes);
+    }
+  }
+
+  @Override
+  int ancestorReach(int level, int reach) {
+    switch (rel.locality()) {
+    case SAME:
+      break;
+    case CHILD:
+    case DESCENDANT:
+      level++;
+      break;
+    case PARENT:
+      level--;
+      reach = Math.max(reach, -level);
+      break;
+    case SISTER:
+      reach = Math.max(reach, 1 - level);
+      break;
+    default:
+      return -1;
+    }
+    return (child == null ? reach : child.ancestorReach(level, reach));
+  }
+
   @Override
   public TregexMatcher matcher(Tree root, Tree tree,
                                IdentityHashMap<Tree, Tree> nodesToParents,
@@ -160,7 +260,7 @@ class DescriptionPattern extends TregexPattern {
   // class?  There seems to be no reason for such a thing.
   // cdm: agree: It seems like it should just be a non-static inner class.  Try this and check it works....
   private static class DescriptionMatcher extends TregexMatcher {
-    private Iterator<Tree> treeNodeMatchCandidateIterator;
+    private final Relation.SearchNodeIterator treeNodeMatchCandidateIterator; // reset, rather than made again, for each node searched from
     private final DescriptionPattern myNode;
     private TregexMatcher childMatcher; // a DescriptionMatcher only has a single child; if it is the left side of multiple relations, a CoordinationMatcher is used.
     private Tree nextTreeNodeMatchCandidate; // the Tree node that this DescriptionMatcher node is trying to match on.
@@ -177,6 +277,7 @@ class DescriptionPattern extends TregexPattern {
                               VariableStrings variableStrings) {
       super(root, tree, nodesToParents, namesToNodes, variableStrings);
       myNode = n;
+      treeNodeMatchCandidateIterator = n.rel.searchNodeIterator();
       resetChildIter();
     }
 
@@ -184,8 +285,7 @@ class DescriptionPattern extends TregexPattern {
     void resetChildIter() {
       decommitVariableGroups();
       removeNamedNodes();
-      treeNodeMatchCandidateIterator =
-        myNode.rel.searchNodeIterator(tree, this);
+      treeNodeMatchCandidateIterator.reset(tree, this);
       finished = false;
       nextTreeNodeMatchCandidate = null;
       if (childMatcher != null) {
@@ -248,12 +348,32 @@ class DescriptionPattern extends TregexPattern {
           if (value == null) {
             found = false;
           } else {
+            Label label = nextTreeNodeMatchCandidate.label();
             if (myNode.basicCatFunction != null) {
-              value = myNode.basicCatFunction.apply(value);
+              value = (label instanceof SymbolLabel ?
+                       ((SymbolLabel) label).basicCategory(myNode.basicCatFunction) :
+                       myNode.basicCatFunction.apply(value));
             }
             switch(myNode.descriptionMode) {
             case EXACT:
-              found = value.equals(myNode.exactMatch);
+              if (label instanceof SymbolLabel) {
+                // both strings are in the symbol table, so compare their ids
+                SymbolLabel symbolLabel = (SymbolLabel) label;
+                int symbol = (myNode.basicCatFunction == null ? symbolLabel.symbol() :
+                              symbolLabel.basicCategorySymbol(myNode.basicCatFunction));
+                found = (symbol == myNode.exactSymbol());
+              } else {
+                found = value.equals(myNode.exactMatch);
+              }
+              break;
+            case EXACT_SET:
+              found = myNode.exactMatches.contains(value);
+              break;
+            case PREFIX:
+              found = value.startsWith(myNode.exactMatch);
+              break;
+            case SUFFIX:
+              found = value.endsWith(myNode.exactMatch);
               break;
             case PATTERN:
               m = myNode.descPattern.matcher(value);
@@ -267,7 +387,8 @@ class DescriptionPattern extends TregexPattern {
             }
           }
           if (found) {
-            for (Pair<Integer,String> varGroup : myNode.variableGroups) { // if variables have been captured from a regex, they must match any previous matchings
+            for (int i = 0, n = myNode.variableGroups.size(); i < n; i++) { // if variables have been captured from a regex, they must match any previous matchings
+              Pair<Integer,String> varGroup = myNode.variableGroups.get(i);
               String thisVariable = varGroup.second();
               String thisVarString = variableStrings.getString(thisVariable);
               if (m != null) {
@@ -339,7 +460,7 @@ class DescriptionPattern extends TregexPattern {
     }
 
     private void removeNamedNodes() {
-      if ((myNode.descPattern != null || myNode.isLink) &&
+      if ((myNode.descriptionMode != null || myNode.isLink) &&
           myNode.name != null) {
         namesToNodes.remove(myNode.name);
       }
@@ -1,12 +1,10 @@
 package edu.stanford.nlp.trees.tregex;
 
 import java.io.Serializable;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -56,16 +54,42 @@ abstract class Relation implements Serializable {
   abstract boolean satisfies(Tree t1, Tree t2, Tree root);
 
   /**
-   * For a given node, returns an {@link Iterator} over the nodes
-   * of the tree containing the node that satisfy the relation.
+   * Returns a new {@link SearchNodeIterator} over the nodes that satisfy
+   * the relation.  It has no nodes until it is {@link
+   * SearchNodeIterator#reset reset} to a node, and can then be reset to
+   * other nodes as often as needed, so a matcher only has to make one.
    *
-   * @param t A node in a Tree
-   * @param matcher The matcher that nodes have to satisfy
-   * @return An Iterator over the nodes
-   *     of the root tree that satisfy the relation.
+   * @return An unpositioned SearchNodeIterator for this relation
    */
-  abstract Iterator<Tree> searchNodeIterator(final Tree t,
-                                             final TregexMatcher matcher);
+  abstract SearchNodeIterator searchNodeIterator();
+
+  /**
+   * Where the nodes related to a node by a relation can lie, relative to
+   * that node.  Used by {@link TregexPattern#ancestorReach}.
+   */
+  enum Locality {
+    /** The node itself */
+    SAME,
+    /** Its children */
+    CHILD,
+    /** Anywhere in the subtree below it */
+    DESCENDANT,
+    /** Its parent */
+    PARENT,
+    /** Its sisters */
+    SISTER,
+    /** Anywhere in the tree */
+    NONLOCAL
+  }
+
+  /**
+   * Says where the nodes satisfying this relation with a node can be found.
+   * Relations are nonlocal unless they say otherwise.
+   */
+  Locality locality() {
+    Locality locality = SIMPLE_RELATION_LOCALITIES.get(this);
+    return (locality == null ? Locality.NONLOCAL : locality);
+  }
 
   private static final Pattern parentOfLastChild = Pattern.compile("(<-|<`)");
 
@@ -172,11 +196,20 @@ abstract class Relation implements Serializable {
   /**
    * This abstract Iterator implements a NULL iterator, but by subclassing and
    * overriding advance and/or initialize, it is an efficient implementation.
+   * <p/>
+   * An iterator is positioned by {@link #reset}.  Each matcher keeps its
+   * own and resets it for every node it searches from, so subclasses keep
+   * their state in fields that <code>initialize</code> sets afresh.  Those
+   * that search a stack of nodes use the one here, which is kept between
+   * resets, so that once it has grown a search allocates nothing.
    */
   abstract static class SearchNodeIterator implements Iterator<Tree> {
-    public SearchNodeIterator() {
-      initialize();
-    }
+
+    /** The node the relation is searched from */
+    Tree t;
+
+    /** The matcher the search is for, which knows the root and parents */
+    TregexMatcher matcher;
 
     /**
      * This is the next tree to be returned by the iterator, or null if there
@@ -184,6 +217,47 @@ abstract class Relation implements Serializable {
      */
     Tree next; // = null;
 
+    private Tree[] stack = new Tree[0];
+    private int stackSize; // = 0;
+
+    /**
+     * Starts the iteration over again from the given node, forgetting any
+     * nodes not yet returned.
+     *
+     * @param t A node in a Tree
+     * @param matcher The matcher that nodes have to satisfy
+     * @return This iterator, positioned at the first node related to t
+     */
+    SearchNodeIterator reset(Tree t, TregexMatcher matcher) {
+      this.t = t;
+      this.matcher = matcher;
+      next = null;
+      while (stackSize > 0) {
+        stack[--stackSize] = null;
+      }
+      initialize();
+      return this;
+    }
+
+    void push(Tree node) {
+      if (stackSize == stack.length) {
+        Tree[] newStack = new Tree[Math.max(16, 2 * stackSize)];
+        System.arraycopy(stack, 0, newStack, 0, stackSize);
+        stack = newStack;
+      }
+      stack[stackSize++] = node;
+    }
+
+    Tree pop() {
+      Tree node = stack[--stackSize];
+      stack[stackSize] = null;
+      return node;
+    }
+
+    boolean stackIsEmpty() {
+      return stackSize == 0;
+    }
+
     /**
      * This method must insure that next points to first item, or null if there
      * are no items.
@@ -231,8 +305,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -254,9 +327,13 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
-      return Collections.singletonList(t).iterator();
+    SearchNodeIterator searchNodeIterator() {
+      return new SearchNodeIterator() {
+        @Override
+        void initialize() {
+          next = t;
+        }
+      };
     }
 
   };
@@ -274,9 +351,27 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
-      return matcher.getRoot().iterator();
+    SearchNodeIterator searchNodeIterator() {
+      // every node of the tree, in the preorder of Tree.iterator()
+      return new SearchNodeIterator() {
+        @Override
+        void initialize() {
+          push(matcher.getRoot());
+          advance();
+        }
+
+        @Override
+        void advance() {
+          if (stackIsEmpty()) {
+            next = null;
+          } else {
+            next = pop();
+            for (int i = next.numChildren() - 1; i >= 0; i--) {
+              push(next.getChild(i));
+            }
+          }
+        }
+      };
     }
   };
 
@@ -292,30 +387,26 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
-        Stack<Tree> searchStack;
-
         @Override
         public void initialize() {
-          searchStack = new Stack<Tree>();
           for (int i = t.numChildren() - 1; i >= 0; i--) {
-            searchStack.push(t.getChild(i));
+            push(t.getChild(i));
           }
-          if (!searchStack.isEmpty()) {
+          if (!stackIsEmpty()) {
             advance();
           }
         }
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
             for (int i = next.numChildren() - 1; i >= 0; i--) {
-              searchStack.push(next.getChild(i));
+              push(next.getChild(i));
             }
           }
         }
@@ -335,8 +426,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -369,16 +459,15 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
-        int nextNum; // subtle bug warning here: if we use int nextNum=0;
-
-        // instead,
+        int nextNum;
 
-        // we get the first daughter twice because the assignment occurs after
-        // advance() has already been
-        // called once by the constructor of SearchNodeIterator.
+        @Override
+        void initialize() {
+          nextNum = 0;
+          advance();
+        }
 
         @Override
         public void advance() {
@@ -405,8 +494,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -428,19 +516,15 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
-        Stack<Tree> searchStack;
-
         @Override
         public void initialize() {
-          searchStack = new Stack<Tree>();
           Tree current = t;
           Tree parent = matcher.getParent(t);
           while (parent != null) {
             for (int i = parent.numChildren() - 1; parent.getChild(i) != current; i--) {
-              searchStack.push(parent.getChild(i));
+              push(parent.getChild(i));
             }
             current = parent;
             parent = matcher.getParent(parent);
@@ -450,12 +534,12 @@ abstract class Relation implements Serializable {
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
             for (int i = next.numChildren() - 1; i >= 0; i--) {
-              searchStack.push(next.getChild(i));
+              push(next.getChild(i));
             }
           }
         }
@@ -476,8 +560,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -524,19 +607,15 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
-        Stack<Tree> searchStack;
-
         @Override
         public void initialize() {
-          searchStack = new Stack<Tree>();
           Tree current = t;
           Tree parent = matcher.getParent(t);
           while (parent != null) {
             for (int i = 0; parent.getChild(i) != current; i++) {
-              searchStack.push(parent.getChild(i));
+              push(parent.getChild(i));
             }
             current = parent;
             parent = matcher.getParent(parent);
@@ -546,12 +625,12 @@ abstract class Relation implements Serializable {
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
             for (int i = next.numChildren() - 1; i >= 0; i--) {
-              searchStack.push(next.getChild(i));
+              push(next.getChild(i));
             }
           }
         }
@@ -572,8 +651,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -625,8 +703,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -663,8 +740,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -697,8 +773,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -731,8 +806,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -769,8 +843,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         Tree parent;
 
@@ -825,8 +898,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         Tree parent;
 
@@ -864,8 +936,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         Tree parent;
 
@@ -915,8 +986,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -947,8 +1017,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -979,8 +1048,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -1007,8 +1075,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -1038,29 +1105,25 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
-        Stack<Tree> searchStack;
-
         @Override
         public void initialize() {
-          searchStack = new Stack<Tree>();
           if (!t.isLeaf() && t.children().length == 1)
-            searchStack.push(t.getChild(0));
-          if (!searchStack.isEmpty()) {
+            push(t.getChild(0));
+          if (!stackIsEmpty()) {
             advance();
           }
         }
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
             if (!next.isLeaf() && next.children().length == 1)
-              searchStack.push(next.getChild(0));
+              push(next.getChild(0));
           }
         }
       };
@@ -1085,33 +1148,29 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
-        Stack<Tree> searchStack;
-
         @Override
         public void initialize() {
-          searchStack = new Stack<Tree>();
           Tree parent = matcher.getParent(t);
           if (parent != null && !parent.isLeaf() &&
               parent.children().length == 1)
-            searchStack.push(parent);
-          if (!searchStack.isEmpty()) {
+            push(parent);
+          if (!stackIsEmpty()) {
             advance();
           }
         }
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
             Tree parent = matcher.getParent(next);
             if (parent != null && !parent.isLeaf() &&
                 parent.children().length == 1)
-              searchStack.push(parent);
+              push(parent);
           }
         }
       };
@@ -1143,6 +1202,28 @@ abstract class Relation implements Serializable {
     SIMPLE_RELATIONS_MAP.put("$,", IMMEDIATE_RIGHT_SISTER_OF);
   }
 
+  private static final Map<Relation, Locality> SIMPLE_RELATION_LOCALITIES = new HashMap<Relation, Locality>();
+
+  static {
+    for (Relation r : new Relation[] { ROOT, EQUALS }) {
+      SIMPLE_RELATION_LOCALITIES.put(r, Locality.SAME);
+    }
+    for (Relation r : new Relation[] { PARENT_OF, HAS_ONLY_CHILD }) {
+      SIMPLE_RELATION_LOCALITIES.put(r, Locality.CHILD);
+    }
+    for (Relation r : new Relation[] { DOMINATES, HAS_LEFTMOST_DESCENDENT,
+        HAS_RIGHTMOST_DESCENDENT, UNARY_PATH_ANCESTOR_OF }) {
+      SIMPLE_RELATION_LOCALITIES.put(r, Locality.DESCENDANT);
+    }
+    for (Relation r : new Relation[] { CHILD_OF, ONLY_CHILD_OF }) {
+      SIMPLE_RELATION_LOCALITIES.put(r, Locality.PARENT);
+    }
+    for (Relation r : new Relation[] { SISTER_OF, LEFT_SISTER_OF,
+        RIGHT_SISTER_OF, IMMEDIATE_LEFT_SISTER_OF, IMMEDIATE_RIGHT_SISTER_OF }) {
+      SIMPLE_RELATION_LOCALITIES.put(r, Locality.SISTER);
+    }
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -1193,8 +1274,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -1255,14 +1335,18 @@ abstract class Relation implements Serializable {
       this.heads = Interner.globalIntern(new Heads(hf));
     }
 
+    @Override
+    Locality locality() {
+      return Locality.DESCENDANT;
+    }
+
     @Override
     boolean satisfies(Tree t1, Tree t2, Tree root) {
       return heads.satisfies(t2, t1, root);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -1324,14 +1408,18 @@ abstract class Relation implements Serializable {
       this.hf = hf;
     }
 
+    @Override
+    Locality locality() {
+      return Locality.PARENT;
+    }
+
     @Override
     boolean satisfies(Tree t1, Tree t2, Tree root) {
       return hf.determineHead(t2) == t1;
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -1386,14 +1474,18 @@ abstract class Relation implements Serializable {
           .globalIntern(new ImmediatelyHeads(hf));
     }
 
+    @Override
+    Locality locality() {
+      return Locality.CHILD;
+    }
+
     @Override
     boolean satisfies(Tree t1, Tree t2, Tree root) {
       return immediatelyHeads.satisfies(t2, t1, root);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -1452,6 +1544,11 @@ abstract class Relation implements Serializable {
       }
     }
 
+    @Override
+    Locality locality() {
+      return Locality.PARENT;
+    }
+
     @Override
     boolean satisfies(Tree t1, Tree t2, Tree root) {
       Tree[] kids = t2.children();
@@ -1468,8 +1565,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -1526,14 +1622,18 @@ abstract class Relation implements Serializable {
       ithChildOf = Interner.globalIntern(new IthChildOf(i));
     }
 
+    @Override
+    Locality locality() {
+      return Locality.CHILD;
+    }
+
     @Override
     boolean satisfies(Tree t1, Tree t2, Tree root) {
       return ithChildOf.satisfies(t2, t1, root);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -1622,6 +1722,11 @@ abstract class Relation implements Serializable {
       }
     }
 
+    @Override
+    Locality locality() {
+      return Locality.DESCENDANT;
+    }
+
     /** {@inheritDoc} */
     @Override
     boolean satisfies(Tree t1, Tree t2, Tree root) {
@@ -1654,31 +1759,27 @@ abstract class Relation implements Serializable {
 
     /** {@inheritDoc} */
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
-        Stack<Tree> searchStack;
-
         @Override
         public void initialize() {
-          searchStack = new Stack<Tree>();
           for (int i = t.numChildren() - 1; i >= 0; i--) {
-            searchStack.push(t.getChild(i));
+            push(t.getChild(i));
           }
-          if (!searchStack.isEmpty()) {
+          if (!stackIsEmpty()) {
             advance();
           }
         }
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
             if (pathMatchesNode(next)) {
               for (int i = next.numChildren() - 1; i >= 0; i--) {
-                searchStack.push(next.getChild(i));
+                push(next.getChild(i));
               }
             }
           }
@@ -1741,8 +1842,7 @@ abstract class Relation implements Serializable {
 
     /** {@inheritDoc} */
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -1855,21 +1955,18 @@ abstract class Relation implements Serializable {
 
     /** {@inheritDoc} */
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
-        private IdentityHashSet<Tree> nodesToSearch;
-        private Stack<Tree> searchStack;
+        private final IdentityHashSet<Tree> nodesToSearch = new IdentityHashSet<Tree>();
 
         @Override
         public void initialize() {
-          nodesToSearch = new IdentityHashSet<Tree>();
-          searchStack = new Stack<Tree>();
-          initializeHelper(searchStack, t, matcher.getRoot());
+          nodesToSearch.clear();
+          initializeHelper(t, matcher.getRoot());
           advance();
         }
 
-        private void initializeHelper(Stack<Tree> stack, Tree node, Tree root) {
+        private void initializeHelper(Tree node, Tree root) {
           if (node==root) {
             return;
           }
@@ -1889,11 +1986,11 @@ abstract class Relation implements Serializable {
           while (followingNode != null) {
             //System.err.println("adding to stack node " + followingNode.toString());
             if (! nodesToSearch.contains(followingNode)) {
-              stack.add(followingNode);
+              push(followingNode);
               nodesToSearch.add(followingNode);
             }
             if (pathMatchesNode(followingNode)) {
-              initializeHelper(stack, followingNode, root);
+              initializeHelper(followingNode, root);
             }
             if (! followingNode.isLeaf()) {
               followingNode = followingNode.children()[0];
@@ -1905,10 +2002,10 @@ abstract class Relation implements Serializable {
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
           }
         }
       };
@@ -1984,21 +2081,18 @@ abstract class Relation implements Serializable {
 
     /** {@inheritDoc} */
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t,
-                                      final TregexMatcher matcher) {
+    SearchNodeIterator searchNodeIterator() {
       return new SearchNodeIterator() {
-        IdentityHashSet<Tree> nodesToSearch;
-        Stack<Tree> searchStack;
+        final IdentityHashSet<Tree> nodesToSearch = new IdentityHashSet<Tree>();
 
         @Override
         public void initialize() {
-          nodesToSearch = new IdentityHashSet<Tree>();
-          searchStack = new Stack<Tree>();
-          initializeHelper(searchStack, t, matcher.getRoot());
+          nodesToSearch.clear();
+          initializeHelper(t, matcher.getRoot());
           advance();
         }
 
-        private void initializeHelper(Stack<Tree> stack, Tree node, Tree root) {
+        private void initializeHelper(Tree node, Tree root) {
           if (node==root) {
             return;
           }
@@ -2018,11 +2112,11 @@ abstract class Relation implements Serializable {
           while (precedingNode != null) {
             //System.err.println("adding to stack node " + precedingNode.toString());
             if ( ! nodesToSearch.contains(precedingNode)) {
-              stack.add(precedingNode);
+              push(precedingNode);
               nodesToSearch.add(precedingNode);
             }
             if (pathMatchesNode(precedingNode)) {
-              initializeHelper(stack, precedingNode, root);
+              initializeHelper(precedingNode, root);
             }
             if (! precedingNode.isLeaf()) {
               precedingNode = precedingNode.children()[0];
@@ -2034,10 +2128,10 @@ abstract class Relation implements Serializable {
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
           }
         }
       };
@@ -0,0 +1,485 @@
+package edu.stanford.nlp.trees.tregex;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.HasIndex;
+import edu.stanford.nlp.trees.*;
+import edu.stanford.nlp.util.StringUtils;
+
+/**
+ * An inverted index of a corpus of trees, which lets tregex search only the
+ * trees that a pattern could match.  For each distinct node label in the
+ * corpus, leaf words included, the index lists the trees it occurs in.  The
+ * {@link TregexPattern#requiredLabels} and
+ * {@link TregexPattern#requiredLabelPrefixes} of a pattern are looked up in
+ * it, and only the trees which have all of them need to be read and
+ * searched.
+ * <p/>
+ * An index is a directory, written by {@link #build} or by running this
+ * class:
+ * <br><br><code>
+ * java edu.stanford.nlp.trees.tregex.TregexIndex [-encoding enc] [-trf class] [-internLabels] indexDir filepath
+ * </code><br><br>
+ * The files under <code>filepath</code> are taken in the order a
+ * {@link DiskTreebank} reads them, and the trees numbered from 0 in that
+ * order.  The index holds the names of the files, a table of where each
+ * tree is in them, the sorted labels, and for each label the numbers of
+ * its trees.  The table and the lists of trees are memory-mapped when the
+ * index is opened, so a search only reads the parts of them it needs.
+ * <p/>
+ * The trees themselves aren't copied, so the files can't be compressed,
+ * and mustn't be changed or moved once they have been indexed: an index
+ * whose files have changed can't be opened.  Trees are read with the
+ * TreeReaderFactory and encoding the index was built with.  Use the
+ * <code>-index</code> option of {@link TregexPattern#main} to search a
+ * corpus through its index.
+ */
+public class TregexIndex {
+
+  private static final int VERSION = 1;
+
+  private static final String PROPERTIES_FILE = "index.properties";
+  private static final String FILES_FILE = "files.txt";
+  private static final String TREES_FILE = "trees.bin";
+  private static final String LABELS_FILE = "labels.bin";
+  private static final String POSTINGS_FILE = "postings.bin";
+
+  /** The bytes per tree in the table of trees: the file number, the length and the start */
+  private static final int TREE_ENTRY_SIZE = 16;
+
+  private final File[] files;
+  /** The number of the first tree of each file */
+  private final int[] firstTrees;
+  private final int size;
+
+  private final Charset charset;
+  private final TreeReaderFactory trf;
+
+  private final ByteBuffer trees;
+  private final String[] labels;
+  /** Where the trees of each label start in the postings, and how many there are */
+  private final int[] postingStarts;
+  private final int[] postingCounts;
+  private final ByteBuffer postings;
+
+  /** The file a tree was last read from, and its number */
+  private FileChannel channel; // = null;
+  private int channelFile = -1;
+
+
+  /**
+   * Opens an index written by {@link #build}.
+   *
+   * @param dir The directory of the index
+   * @throws IOException If the index can't be read, or the files it was
+   *     built from have changed since
+   */
+  public TregexIndex(File dir) throws IOException {
+    Properties properties = new Properties();
+    InputStream in = new FileInputStream(new File(dir, PROPERTIES_FILE));
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+    if ( ! String.valueOf(VERSION).equals(properties.getProperty("version"))) {
+      throw new IOException(dir + " is not a tregex index of version " + VERSION);
+    }
+    size = Integer.parseInt(properties.getProperty("trees"));
+    charset = Charset.forName(properties.getProperty("encoding"));
+    trf = TregexPattern.getTreeReaderFactory(properties.getProperty("treeReaderFactory"),
+                                             Boolean.parseBoolean(properties.getProperty("internLabels")));
+
+    List<File> fileList = new ArrayList<File>();
+    List<Integer> firstTreeList = new ArrayList<Integer>();
+    BufferedReader filesIn = new BufferedReader(new InputStreamReader(new FileInputStream(new File(dir, FILES_FILE)), "UTF-8"));
+    try {
+      for (String line; (line = filesIn.readLine()) != null; ) {
+        String[] fields = line.split("\t", 4);
+        File file = new File(fields[3]);
+        if (file.length() != Long.parseLong(fields[1]) || file.lastModified() != Long.parseLong(fields[2])) {
+          throw new IOException(file + " has changed since the index in " + dir + " was built");
+        }
+        fileList.add(file);
+        firstTreeList.add(Integer.valueOf(fields[0]));
+      }
+    } finally {
+      filesIn.close();
+    }
+    files = fileList.toArray(new File[fileList.size()]);
+    firstTrees = new int[files.length];
+    for (int i = 0; i < firstTrees.length; i++) {
+      firstTrees[i] = firstTreeList.get(i);
+    }
+
+    DataInputStream labelsIn = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(dir, LABELS_FILE))));
+    try {
+      int numLabels = labelsIn.readInt();
+      labels = new String[numLabels];
+      postingStarts = new int[numLabels];
+      postingCounts = new int[numLabels];
+      for (int i = 0; i < numLabels; i++) {
+        byte[] bytes = new byte[labelsIn.readInt()];
+        labelsIn.readFully(bytes);
+        labels[i] = new String(bytes, "UTF-8");
+        postingStarts[i] = labelsIn.readInt();
+        postingCounts[i] = labelsIn.readInt();
+      }
+    } finally {
+      labelsIn.close();
+    }
+
+    trees = map(new File(dir, TREES_FILE));
+    postings = map(new File(dir, POSTINGS_FILE));
+    if (trees.capacity() != (long) size * TREE_ENTRY_SIZE) {
+      throw new IOException("The table of trees in " + dir + " is the wrong size for " + size + " trees");
+    }
+  }
+
+  private static MappedByteBuffer map(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      if (raf.length() > Integer.MAX_VALUE) {
+        throw new IOException(file + " is too large to map");
+      }
+      // the mapping stays valid once the file is closed
+      return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Returns the number of trees in the corpus.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the TreeReaderFactory that trees are read with.
+   */
+  public TreeReaderFactory treeReaderFactory() {
+    return trf;
+  }
+
+  /**
+   * Returns the file that a tree is in.
+   *
+   * @param n The number of the tree in the corpus, counting from 0
+   */
+  public File getFile(int n) {
+    return files[trees.getInt(n * TREE_ENTRY_SIZE)];
+  }
+
+  /**
+   * Returns the trees that have every label in
+   * {@link TregexPattern#requiredLabels} and, for every prefix in
+   * {@link TregexPattern#requiredLabelPrefixes}, a label starting with it.
+   * No other tree can match the pattern.  If the pattern requires nothing,
+   * this is every tree.
+   *
+   * @param p The pattern to be searched for
+   * @return The numbers of the trees, counting from 0
+   */
+  public BitSet candidates(TregexPattern p) {
+    BitSet candidates = new BitSet(size);
+    candidates.set(0, size);
+    // the rarest labels first, as they rule out the most trees
+    List<Integer> required = new ArrayList<Integer>();
+    for (String label : p.requiredLabels()) {
+      int i = Arrays.binarySearch(labels, label);
+      if (i < 0) {
+        return new BitSet();
+      }
+      required.add(i);
+    }
+    Collections.sort(required, new Comparator<Integer>() {
+      public int compare(Integer i, Integer j) {
+        return postingCounts[i] - postingCounts[j];
+      }
+    });
+    for (int i : required) {
+      candidates.and(treesWith(i, i + 1));
+    }
+    for (String prefix : p.requiredLabelPrefixes()) {
+      if (candidates.isEmpty()) {
+        break;
+      }
+      int from = Arrays.binarySearch(labels, prefix);
+      if (from < 0) {
+        from = -from - 1;
+      }
+      int to = from;
+      while (to < labels.length && labels[to].startsWith(prefix)) {
+        to++;
+      }
+      candidates.and(treesWith(from, to));
+    }
+    return candidates;
+  }
+
+  /** The trees which have any of the labels from number from up to number to */
+  private BitSet treesWith(int from, int to) {
+    BitSet trees = new BitSet(size);
+    for (int i = from; i < to; i++) {
+      for (int j = postingStarts[i], end = j + postingCounts[i]; j < end; j++) {
+        trees.set(postings.getInt(4 * j));
+      }
+    }
+    return trees;
+  }
+
+  /**
+   * Reads a tree from its file.  As in a {@link DiskTreebank}, if the root
+   * Label of the tree implements HasIndex, then the name of the file and
+   * the number of the tree in the file, counting from 1, are put in it.
+   *
+   * @param n The number of the tree in the corpus, counting from 0
+   * @return The tree
+   * @throws IOException If the file can't be read
+   */
+  public synchronized Tree getTree(int n) throws IOException {
+    if (n < 0 || n >= size) {
+      throw new IndexOutOfBoundsException("Tree " + n + " of " + size);
+    }
+    int entry = n * TREE_ENTRY_SIZE;
+    int fileNo = trees.getInt(entry);
+    byte[] bytes = new byte[trees.getInt(entry + 4)];
+    long start = trees.getLong(entry + 8);
+    if (fileNo != channelFile) {
+      close();
+      channel = new FileInputStream(files[fileNo]).getChannel();
+      channelFile = fileNo;
+    }
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    while (buf.hasRemaining()) {
+      if (channel.read(buf, start + buf.position()) < 0) {
+        throw new EOFException("Tree " + n + " runs past the end of " + files[fileNo]);
+      }
+    }
+    TreeReader tr = trf.newTreeReader(new StringReader(new String(bytes, charset)));
+    Tree t;
+    try {
+      t = tr.readTree();
+    } finally {
+      tr.close();
+    }
+    if (t != null && t.label() instanceof HasIndex) {
+      HasIndex lab = (HasIndex) t.label();
+      lab.setSentIndex(n - firstTrees[fileNo] + 1);
+      lab.setDocID(files[fileNo].getName());
+    }
+    return t;
+  }
+
+  /**
+   * Closes the file that trees were last read from.  The index can still
+   * be used afterwards.
+   */
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+      channelFile = -1;
+    }
+  }
+
+
+  /** The trees a label occurs in, in increasing order */
+  private static class Postings {
+
+    int[] trees = new int[4];
+    int size; // = 0;
+
+    void add(int tree) {
+      if (size == trees.length) {
+        trees = Arrays.copyOf(trees, 2 * size);
+      }
+      trees[size++] = tree;
+    }
+
+  }
+
+  /**
+   * Lists the files under a path in the order that a DiskTreebank reads
+   * them: each directory's files in sorted order, then its subdirectories,
+   * breadth first.
+   */
+  private static List<File> listFiles(File path) {
+    List<File> dirs = new ArrayList<File>(Collections.singletonList(path));
+    List<File> files = new ArrayList<File>();
+    for (int i = 0; i < dirs.size(); i++) {
+      File dir = dirs.get(i);
+      File[] listing = (dir.isDirectory() ? dir.listFiles() : new File[] { dir });
+      if (listing == null) {
+        continue;
+      }
+      Arrays.sort(listing);
+      for (File file : listing) {
+        if (file.isDirectory()) {
+          dirs.add(file);
+        } else {
+          files.add(file);
+        }
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Indexes the trees in a file, or in all of the files under a directory,
+   * writing the index to <code>dir</code>.  Every tree is read twice, by
+   * finding its brackets, as a search through the index will, and with an
+   * ordinary TreeReader, and the two must agree, so that a search through
+   * the index finds just what a search of the files would.
+   *
+   * @param dir The directory to write the index to, which is created if need be
+   * @param path The file or directory of trees to index
+   * @param treeReaderFactoryClassName The TreeReaderFactory to read trees
+   *     with, or null for the one tregex uses by default
+   * @param internLabels Whether the default TreeReaderFactory interns labels
+   * @param encoding The encoding of the files
+   * @throws IOException If the files can't be read, or a tree can't be
+   *     found by its brackets, or the index can't be written
+   */
+  public static void build(File dir, File path, String treeReaderFactoryClassName,
+                           boolean internLabels, String encoding) throws IOException {
+    TreeReaderFactory trf = TregexPattern.getTreeReaderFactory(treeReaderFactoryClassName, internLabels);
+    List<File> files = listFiles(path);
+    for (File file : files) {
+      if (IOUtils.isCompressedFileName(file.getName())) {
+        throw new IOException("Can't index the compressed file " + file);
+      }
+    }
+    if ( ! dir.isDirectory() && ! dir.mkdirs()) {
+      throw new IOException("Can't create the directory " + dir);
+    }
+
+    Map<String,Postings> postingsMap = new HashMap<String,Postings>();
+    Set<String> treeLabels = new HashSet<String>();
+    int numTrees = 0;
+    PrintWriter filesOut = new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(dir, FILES_FILE)), "UTF-8"));
+    DataOutputStream treesOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, TREES_FILE))));
+    try {
+      for (int fileNo = 0; fileNo < files.size(); fileNo++) {
+        File file = files.get(fileNo).getAbsoluteFile();
+        filesOut.println(numTrees + "\t" + file.length() + '\t' + file.lastModified() + '\t' + file.getPath());
+        IndexedTreebank treebank = new IndexedTreebank(trf, encoding, 0);
+        treebank.loadPath(file, null);
+        TreeReader tr = trf.newTreeReader(new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding)));
+        try {
+          int n = 0;
+          for (Tree t : treebank) {
+            n++;
+            if (n > treebank.size() || ! t.equals(tr.readTree())) {
+              throw new IOException("Tree " + n + " of " + file + " can't be found by its brackets");
+            }
+            treesOut.writeInt(fileNo);
+            treesOut.writeInt(treebank.getLength(n));
+            treesOut.writeLong(treebank.getStart(n));
+            treeLabels.clear();
+            for (Tree node : t) {
+              String label = node.value();
+              if (label != null && treeLabels.add(label)) {
+                Postings labelPostings = postingsMap.get(label);
+                if (labelPostings == null) {
+                  labelPostings = new Postings();
+                  postingsMap.put(label, labelPostings);
+                }
+                labelPostings.add(numTrees);
+              }
+            }
+            numTrees++;
+          }
+          if (n != treebank.size() || tr.readTree() != null) {
+            throw new IOException("The trees of " + file + " can't all be found by their brackets");
+          }
+        } finally {
+          tr.close();
+        }
+      }
+    } finally {
+      filesOut.close();
+      treesOut.close();
+    }
+
+    List<String> sortedLabels = new ArrayList<String>(postingsMap.keySet());
+    Collections.sort(sortedLabels);
+    DataOutputStream labelsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, LABELS_FILE))));
+    DataOutputStream postingsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, POSTINGS_FILE))));
+    try {
+      labelsOut.writeInt(sortedLabels.size());
+      int start = 0;
+      for (String label : sortedLabels) {
+        Postings labelPostings = postingsMap.get(label);
+        // labels are written with their length, as words can be longer than writeUTF allows
+        byte[] bytes = label.getBytes("UTF-8");
+        labelsOut.writeInt(bytes.length);
+        labelsOut.write(bytes);
+        labelsOut.writeInt(start);
+        labelsOut.writeInt(labelPostings.size);
+        for (int i = 0; i < labelPostings.size; i++) {
+          postingsOut.writeInt(labelPostings.trees[i]);
+        }
+        start += labelPostings.size;
+      }
+    } finally {
+      labelsOut.close();
+      postingsOut.close();
+    }
+
+    // written last, so that an index whose building failed can't be opened
+    Properties properties = new Properties();
+    properties.setProperty("version", String.valueOf(VERSION));
+    properties.setProperty("trees", String.valueOf(numTrees));
+    properties.setProperty("encoding", encoding);
+    if (treeReaderFactoryClassName != null) {
+      properties.setProperty("treeReaderFactory", treeReaderFactoryClassName);
+    }
+    properties.setProperty("internLabels", String.valueOf(internLabels));
+    OutputStream out = new FileOutputStream(new File(dir, PROPERTIES_FILE));
+    try {
+      properties.store(out, "tregex index of " + path.getAbsolutePath());
+    } finally {
+      out.close();
+    }
+    System.err.println("Indexed " + numTrees + " trees in " + files.size() + " files, with " +
+                       sortedLabels.size() + " distinct labels");
+  }
+
+  /**
+   * Builds an index of the trees in a file or directory.  Usage:
+   * <br><br><code>
+   * java edu.stanford.nlp.trees.tregex.TregexIndex [-encoding enc] [-trf class] [-internLabels] indexDir filepath
+   * </code><br><br>
+   * The options are those of {@link TregexPattern#main}, which reads the
+   * trees in the same way when it searches through the index.
+   */
+  public static void main(String[] args) throws IOException {
+    String encodingOption = "-encoding";
+    String trfOption = "-trf";
+    String internLabelsOption = "-internLabels";
+    Map<String,Integer> flagMap = new HashMap<String,Integer>();
+    flagMap.put(encodingOption, 1);
+    flagMap.put(trfOption, 1);
+    flagMap.put(internLabelsOption, 0);
+    Map<String, String[]> argsMap = StringUtils.argsToMap(args, flagMap);
+    args = argsMap.get(null);
+    if (args.length != 2) {
+      System.err.println("Usage: java edu.stanford.nlp.trees.tregex.TregexIndex [-encoding enc] [-trf class] [-internLabels] indexDir filepath");
+      return;
+    }
+    String encoding = (argsMap.containsKey(encodingOption) ? argsMap.get(encodingOption)[0] : "UTF-8");
+    String treeReaderFactoryClassName = (argsMap.containsKey(trfOption) ? argsMap.get(trfOption)[0] : null);
+    build(new File(args[0]), new File(args[1]), treeReaderFactoryClassName,
+          argsMap.containsKey(internLabelsOption), encoding);
+  }
+
+}
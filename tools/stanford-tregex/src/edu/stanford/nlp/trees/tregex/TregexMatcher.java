@@ -30,6 +30,8 @@ package edu.stanford.nlp.trees.tregex;
 
 import java.util.*;
 
+import edu.stanford.nlp.trees.CompactTree;
+import edu.stanford.nlp.trees.ParentedTreeNode;
 import edu.stanford.nlp.trees.Tree;
 
 /**
@@ -51,6 +53,9 @@ public abstract class TregexMatcher {
   Iterator<Tree> findIterator;
   Tree findCurrent;
 
+  /** How many nodes the root of the pattern has been tried at */
+  private int nodesTried; // = 0;
+
 
   TregexMatcher(Tree root, Tree tree, IdentityHashMap<Tree, Tree> nodesToParents, Map<String, Tree> namesToNodes, VariableStrings variableStrings) {
     this.root = root;
@@ -101,6 +106,7 @@ public abstract class TregexMatcher {
    *  @return whether the matcher matches at node
    */
   public boolean matchesAt(Tree node) {
+    nodesTried++;
     resetChildIter(node);
     return matches();
   }
@@ -128,6 +134,7 @@ public abstract class TregexMatcher {
     }
     while (findIterator.hasNext()) {
       findCurrent = findIterator.next();
+      nodesTried++;
       resetChildIter(findCurrent);
       if (matches()) {
         return true;
@@ -136,6 +143,14 @@ public abstract class TregexMatcher {
     return false;
   }
 
+  /**
+   * The number of nodes that {@link #find()} and {@link #matchesAt} have
+   * tried to match the pattern at, for profiling searches.
+   */
+  public int nodesTried() {
+    return nodesTried;
+  }
+
   /**
    * Find the next match of the pattern on the tree such that the
    * matching node (that is, the tree node matching the root node of
@@ -169,6 +184,15 @@ public abstract class TregexMatcher {
   }
 
   Tree getParent(Tree node) {
+    if (node instanceof ParentedTreeNode || node instanceof CompactTree.Node) {
+      if (node == root) {
+        return null;
+      }
+      Tree parent = node.parent();
+      if (parent != null) {
+        return parent;
+      }
+    }
     if (nodesToParents.size() == 0) {
       fillNodesToParents(root, null);
     }
@@ -37,10 +37,13 @@ import java.util.regex.Pattern;
 
 import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.ling.StringLabelFactory;
+import edu.stanford.nlp.ling.SymbolLabel;
 import edu.stanford.nlp.trees.*;
 import edu.stanford.nlp.util.Pair;
 import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
+import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
 
 /**
@@ -342,6 +345,8 @@ public abstract class TregexPattern implements Serializable {
   private boolean neg = false;
   private boolean opt = false;
   private String patternString;
+  private Set<String> requiredLabels = Collections.emptySet();
+  private Set<String> requiredLabelPrefixes = Collections.emptySet();
 
   void negate() {
     neg = true;
@@ -391,6 +396,76 @@ public abstract class TregexPattern implements Serializable {
 
   abstract boolean getChangesVariables();
 
+  /**
+   * Helper for {@link #ancestorReach}.  <code>level</code> is the lowest
+   * level, relative to the node being matched (positive numbers are below
+   * it), at which the node this pattern describes can be found, and
+   * <code>reach</code> is the reach of the pattern so far.
+   */
+  abstract int ancestorReach(int level, int reach);
+
+  /**
+   * Says how far up the tree a match of this pattern at a node can look.
+   * Whether the pattern matches at a node depends only on the subtree headed
+   * by the <code>n</code>th ancestor of that node, where <code>n</code> is
+   * the value returned (0 is the node itself).  Patterns using relations
+   * that can reach anywhere in the tree, such as precedence or dominance
+   * from above, return -1.
+   *
+   * @return The number of levels above the matched node that the pattern
+   *     can see, or -1 if it is not bounded
+   */
+  public int ancestorReach() {
+    return ancestorReach(0, 0);
+  }
+
+  /**
+   * Adds to <code>labels</code> the exact node labels that must all occur
+   * in a tree for this pattern to match it, and to <code>prefixes</code>
+   * the strings which, for each of them, some node label must start with.
+   * Negated and optional parts of the pattern require nothing.
+   */
+  abstract void collectRequiredLabels(Set<String> labels, Set<String> prefixes);
+
+  /**
+   * Works out the labels returned by {@link #requiredLabels} and
+   * {@link #requiredLabelPrefixes}.  Called by {@link TregexPatternCompiler}
+   * once the whole pattern has been parsed.
+   */
+  void findRequiredLabels() {
+    Set<String> labels = new HashSet<String>();
+    Set<String> prefixes = new HashSet<String>();
+    collectRequiredLabels(labels, prefixes);
+    requiredLabels = Collections.unmodifiableSet(labels);
+    requiredLabelPrefixes = Collections.unmodifiableSet(prefixes);
+  }
+
+  /**
+   * The node labels that must all occur in a tree for this pattern to match
+   * it.  These are the exact descriptions, like <code>require</code> in
+   * <code>VB &lt; require</code>, that are not under a negation or an
+   * optional relation.  If a tree does not contain all of them, there is no
+   * need to search it.
+   *
+   * @return An unmodifiable set of labels, which may be empty
+   */
+  public Set<String> requiredLabels() {
+    return requiredLabels;
+  }
+
+  /**
+   * The prefixes of node labels that a tree must have for this pattern to
+   * match it: for each of them, some label in the tree starts with it.
+   * These come from regexes that only match the start of a label, like
+   * <code>/^obligat/</code> in <code>VB &lt; /^obligat/</code>, that are not
+   * under a negation or an optional relation.
+   *
+   * @return An unmodifiable set of prefixes, which may be empty
+   */
+  public Set<String> requiredLabelPrefixes() {
+    return requiredLabelPrefixes;
+  }
+
   abstract TregexMatcher matcher(Tree root, Tree tree,
                                  IdentityHashMap<Tree, Tree> nodesToParents,
                                  Map<String, Tree> namesToNodes,
@@ -403,7 +478,26 @@ public abstract class TregexPattern implements Serializable {
    * @return a TregexMatcher
    */
   public TregexMatcher matcher(Tree t) {
-    return matcher(t, t, new IdentityHashMap<Tree, Tree>(),
+    return matcher(t, new IdentityHashMap<Tree, Tree>());
+  }
+
+  /**
+   * Get a {@link TregexMatcher} for this pattern on this tree, which looks
+   * up the parents of nodes in <code>nodesToParents</code>.  The map is
+   * filled in with the parent of every node in <code>t</code> the first
+   * time a matcher needs one, so passing the same map to the matchers of
+   * several patterns on one tree saves each of them from going over the
+   * whole tree again.  The map must be empty or filled in for
+   * <code>t</code> as it is now: if the tree is changed, clear the map
+   * before matching on it again.
+   *
+   * @param t a tree to match on
+   * @param nodesToParents the parents of the nodes of <code>t</code>, or an
+   *     empty map to be filled in
+   * @return a TregexMatcher
+   */
+  public TregexMatcher matcher(Tree t, IdentityHashMap<Tree, Tree> nodesToParents) {
+    return matcher(t, t, nodesToParents,
                    new HashMap<String, Tree>(), new VariableStrings());
   }
 
@@ -536,6 +630,27 @@ public abstract class TregexPattern implements Serializable {
    * <li> <code>-hf &lt;headfinder-class-name&gt;</code> use the specified {@link HeadFinder} class to determine headship relations.
    * <li> <code>-hfArg &lt;string&gt;</code> pass a string argument in to the {@link HeadFinder} class's constructor.  <code>-hfArg</code> can be used multiple times to pass in multiple arguments.
    * <li> <code>-trf &lt;TreeReaderFactory-class-name&gt;</code> use the specified {@link TreeReaderFactory} class to read trees from files.
+   * <li> <code>-internLabels</code> unless <code>-trf</code> is given, read trees with {@link SymbolLabel}s, which keep one copy of each distinct
+   * label and let the pattern compare labels by integer id.
+   * <li> <code>-compact</code> keep the trees in memory as {@link CompactTree}s, which take much less space than ordinary trees and
+   * on which dominance and precedence are checked by comparing indices rather than by walking the tree.
+   * <li> <code>-flushEachTree</code> flush the output after each tree printed, so that matches can be watched as they are found.  By
+   * default the <code>penn</code> and <code>oneline</code> formats are written through a large buffer, which is much faster.
+   * <li> <code>-outputCompression gzip|bzip2</code> compress what is printed to standard output.  Compressed tree files are always read,
+   * decompressing them as they go.
+   * <li> <code>-index &lt;index-dir&gt;</code> search the trees of a corpus indexed by {@link TregexIndex}, reading only those
+   * trees that have all of the labels the pattern requires.  No filepath is given: the trees are read from the files the index
+   * was built from, with the encoding and tree reader factory it was built with, and are numbered as in a search of those files.
+   * <li> <code>-patterns &lt;filename&gt;</code> search for many patterns at once, reading each tree only once.  The file has one
+   * pattern per line, its name and then the pattern, separated by a tab; blank lines and lines starting with # are ignored.
+   * Don't specify a pattern when this option is used.  What would be printed for each pattern is written to a file of its own,
+   * <code>name.txt</code>, so names can't contain a path separator or "..", and the number of matches of each pattern is
+   * printed at the end, one pattern per line.
+   * The patterns share the map of each tree's parents, and a pattern isn't matched on trees that lack its required labels.
+   * <li> <code>-outputDir &lt;dir&gt;</code> with <code>-patterns</code>, the directory to write the files of matches to, rather
+   * than the current directory.  With <code>-outputCompression</code>, the files are compressed and named accordingly.
+   * <li> <code>-threads &lt;n&gt;</code> with <code>-patterns</code>, match the patterns on <code>n</code> threads.  Trees are read
+   * in batches, and each pattern goes through a batch on one thread, so what is written for it is in the order of the trees.
    * <li> <code>-v</code> print every tree that contains no matches of the specified pattern, but print no matches to the pattern.
    *
    * <li> <code>-x</code> Instead of the matched subtree, print the matched subtree's identifying number as defined in <tt>tgrep2</tt>:a
@@ -564,6 +679,14 @@ public abstract class TregexPattern implements Serializable {
     String headFinderOption = "-hf";
     String headFinderArgOption = "-hfArg";
     String trfOption = "-trf";
+    String internLabelsOption = "-internLabels";
+    String compactOption = "-compact";
+    String flushEachTreeOption = "-flushEachTree";
+    String outputCompressionOption = "-outputCompression";
+    String indexOption = "-index";
+    String patternsOption = "-patterns";
+    String outputDirOption = "-outputDir";
+    String threadsOption = "-threads";
     String headFinderClassName = null;
     String[] headFinderArgs = StringUtils.EMPTY_STRING_ARRAY;
     String treeReaderFactoryClassName = null;
@@ -585,6 +708,14 @@ public abstract class TregexPattern implements Serializable {
     flagMap.put(headFinderOption,1);
     flagMap.put(headFinderArgOption,1);
     flagMap.put(trfOption,1);
+    flagMap.put(internLabelsOption,0);
+    flagMap.put(compactOption,0);
+    flagMap.put(flushEachTreeOption,0);
+    flagMap.put(outputCompressionOption,1);
+    flagMap.put(indexOption,1);
+    flagMap.put(patternsOption,1);
+    flagMap.put(outputDirOption,1);
+    flagMap.put(threadsOption,1);
     flagMap.put(macroOption, 1);
     Map<String, String[]> argsMap = StringUtils.argsToMap(args, flagMap);
     args = argsMap.get(null);
@@ -606,11 +737,11 @@ public abstract class TregexPattern implements Serializable {
       return;
     }
 
-    if (args.length < 1) {
-      errPW.println("Usage: java edu.stanford.nlp.trees.tregex.TregexPattern [-T] [-C] [-w] [-f] [-o] [-n] [-s] [-filter]  [-hf class] [-trf class] [-h handle]* pattern [filepath]");
+    if (args.length < 1 && ! argsMap.containsKey(patternsOption)) {
+      errPW.println("Usage: java edu.stanford.nlp.trees.tregex.TregexPattern [-T] [-C] [-w] [-f] [-o] [-n] [-s] [-filter]  [-hf class] [-trf class] [-internLabels] [-compact] [-flushEachTree] [-outputCompression gzip|bzip2] [-index dir] [-patterns file [-outputDir dir] [-threads n]] [-h handle]* pattern [filepath]");
       return;
     }
-    String matchString = args[0];
+    String matchString = (args.length > 0 ? args[0] : null);
 
     if (argsMap.containsKey(macroOption)) {
       macroFilename = argsMap.get(macroOption)[0];
@@ -636,6 +767,13 @@ public abstract class TregexPattern implements Serializable {
       System.arraycopy(args,0,newArgs,1,args.length);
       args = newArgs;
     }
+    if (argsMap.containsKey(patternsOption)) {
+      // as with -i, there is no pattern among the arguments
+      String[] newArgs = new String[args.length+1];
+      System.arraycopy(args,0,newArgs,1,args.length);
+      newArgs[0] = argsMap.get(patternsOption)[0];
+      args = newArgs;
+    }
     if (argsMap.containsKey("-C")) {
       TRegexTreeVisitor.printMatches = false;
       TRegexTreeVisitor.printNumMatchesToStdOut = true ;
@@ -658,6 +796,9 @@ public abstract class TregexPattern implements Serializable {
       TRegexTreeVisitor.oneMatchPerRootNode = true;
     if(argsMap.containsKey("-n"))
       TRegexTreeVisitor.reportTreeNumbers = true;
+    if (argsMap.containsKey(flushEachTreeOption)) {
+      TRegexTreeVisitor.flushPolicy = TreeWriter.FlushPolicy.EACH_TREE;
+    }
     if (argsMap.containsKey("-u")) {
       treePrintFormats.append(TreePrint.rootLabelOnlyFormat).append(',');
     } else if (argsMap.containsKey("-s")) { // display short form
@@ -684,19 +825,34 @@ public abstract class TregexPattern implements Serializable {
       //TreePattern p = TreePattern.compile("/^S/ > S=dt $++ '' $-- ``");
       TregexPatternCompiler tpc = new TregexPatternCompiler(hf);
       Macros.addAllMacros(tpc, macroFilename, encoding);
-      TregexPattern p = tpc.compile(matchString);
-      errPW.println("Pattern string:\n" + p.pattern());
-      errPW.println("Parsed representation:");
-      p.prettyPrint(errPW);
+      TregexPattern p = null;
+      List<Pair<String,TregexPattern>> patterns = null;
+      if (argsMap.containsKey(patternsOption)) {
+        patterns = readPatterns(argsMap.get(patternsOption)[0], encoding, tpc);
+        errPW.println("Read " + patterns.size() + " patterns from " + argsMap.get(patternsOption)[0]);
+      } else {
+        p = tpc.compile(matchString);
+        errPW.println("Pattern string:\n" + p.pattern());
+        errPW.println("Parsed representation:");
+        p.prettyPrint(errPW);
+      }
 
       String[] handles = argsMap.get(printHandleOption);
       if (argsMap.containsKey("-filter")) {
-        TreeReaderFactory trf = getTreeReaderFactory(treeReaderFactoryClassName);
-        treebank = new MemoryTreebank(trf, encoding);//has to be in memory since we're not storing it on disk
+        TreeReaderFactory trf = getTreeReaderFactory(treeReaderFactoryClassName, argsMap.containsKey(internLabelsOption));
         //read from stdin
         Reader reader = new BufferedReader(new InputStreamReader(System.in, encoding));
-        ((MemoryTreebank) treebank).load(reader);
+        if (argsMap.containsKey(compactOption)) {
+          treebank = new CompactTreebank(trf, encoding);
+          ((CompactTreebank) treebank).load(reader);
+        } else {
+          treebank = new MemoryTreebank(trf, encoding);//has to be in memory since we're not storing it on disk
+          ((MemoryTreebank) treebank).load(reader);
+        }
         reader.close();
+      } else if (argsMap.containsKey(indexOption)) {
+        errPW.println("Reading trees through the index in " + argsMap.get(indexOption)[0]);
+        index = new TregexIndex(new File(argsMap.get(indexOption)[0]));
       } else if (args.length == 1) {
         errPW.println("using default tree");
         TreeReader r = new PennTreeReader(new StringReader("(VP (VP (VBZ Try) (NP (NP (DT this) (NN wine)) (CC and) (NP (DT these) (NNS snails)))) (PUNCT .))"), new LabeledScoredTreeFactory(new StringLabelFactory()));
@@ -706,19 +862,53 @@ public abstract class TregexPattern implements Serializable {
       } else {
         int last = args.length - 1;
         errPW.println("Reading trees from file(s) " + args[last]);
-        TreeReaderFactory trf = getTreeReaderFactory(treeReaderFactoryClassName);
-        treebank = new DiskTreebank(trf, encoding);
+        TreeReaderFactory trf = getTreeReaderFactory(treeReaderFactoryClassName, argsMap.containsKey(internLabelsOption));
+        treebank = (argsMap.containsKey(compactOption) ? new CompactTreebank(trf, encoding) : new DiskTreebank(trf, encoding));
         treebank.loadPath(args[last], null, true);
       }
-      TRegexTreeVisitor vis = new TRegexTreeVisitor(p, handles, encoding);
+      if (patterns != null) {
+        File outputDir = new File(argsMap.containsKey(outputDirOption) ? argsMap.get(outputDirOption)[0] : ".");
+        String compression = (argsMap.containsKey(outputCompressionOption) ? argsMap.get(outputCompressionOption)[0] : null);
+        int numThreads = (argsMap.containsKey(threadsOption) ? Integer.parseInt(argsMap.get(threadsOption)[0]) : 1);
+        searchPatterns(patterns, handles, encoding, treePrintFormats.toString(), outputDir, compression, numThreads, errPW);
+        Timing.endTime();
+        return;
+      }
+      boolean compressOutput = argsMap.containsKey(outputCompressionOption);
+      OutputStream out = (compressOutput ? IOUtils.getCompressingOutputStream(System.out, argsMap.get(outputCompressionOption)[0]) : System.out);
+      TRegexTreeVisitor vis = new TRegexTreeVisitor(p, handles, encoding, treePrintFormats.toString(), out);
 
-      treebank.apply(vis);
+      if (index != null) {
+        // trees which lack a label the pattern needs can't match, unless
+        // every tree is to be printed anyway
+        BitSet candidates;
+        if (TRegexTreeVisitor.printNonMatchingTrees || TRegexTreeVisitor.printTree) {
+          candidates = new BitSet(index.size());
+          candidates.set(0, index.size());
+        } else {
+          candidates = index.candidates(p);
+        }
+        errPW.println("Searching " + candidates.cardinality() + " of " + index.size() + " trees");
+        for (int n = candidates.nextSetBit(0); n >= 0; n = candidates.nextSetBit(n + 1)) {
+          vis.treeNumber = n;
+          vis.visitTree(index.getTree(n));
+        }
+        index.close();
+      } else {
+        treebank.apply(vis);
+      }
       Timing.endTime();
       if (TRegexTreeVisitor.printMatches) {
+        vis.flush();
         errPW.println("There were " + vis.numMatches() + " matches in total.");
       }
       if (TRegexTreeVisitor.printNumMatchesToStdOut) {
-        System.out.println(vis.numMatches());
+        vis.printNumMatches();
+      }
+      if (compressOutput) {
+        vis.close(); // to finish the compressed stream
+      } else {
+        vis.flush();
       }
     } catch (IOException e) {
       e.printStackTrace();
@@ -728,8 +918,10 @@ public abstract class TregexPattern implements Serializable {
     }
   }
 
-  private static TreeReaderFactory getTreeReaderFactory(String treeReaderFactoryClassName) {
-    TreeReaderFactory trf = new TRegexTreeReaderFactory();
+  static TreeReaderFactory getTreeReaderFactory(String treeReaderFactoryClassName, boolean internLabels) {
+    TreeReaderFactory trf = (internLabels ?
+                             new TRegexTreeReaderFactory(new LabeledScoredTreeFactory(SymbolLabel.factory())) :
+                             new TRegexTreeReaderFactory());
     if (treeReaderFactoryClassName != null) {
       try {
         trf = (TreeReaderFactory) Class.forName(treeReaderFactoryClassName).newInstance();
@@ -740,7 +932,125 @@ public abstract class TregexPattern implements Serializable {
     return trf;
   }
 
+  /**
+   * Reads the patterns for the <code>-patterns</code> option of
+   * {@link #main}.  Like a macro file, the file has one pattern per line,
+   * its name and then the pattern, separated by a tab, and blank lines and
+   * lines starting with # are ignored.  As the names are used for the
+   * files the matches are written to, they can't contain a path separator
+   * or "..".
+   *
+   * @return The names of the patterns, with the patterns, in order
+   */
+  private static List<Pair<String,TregexPattern>> readPatterns(String filename, String encoding,
+                                                               TregexPatternCompiler tpc) throws IOException {
+    List<Pair<String,TregexPattern>> patterns = new ArrayList<Pair<String,TregexPattern>>();
+    Set<String> names = new HashSet<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(filename), encoding));
+    try {
+      int lineNumber = 0;
+      for (String line; (line = reader.readLine()) != null; ) {
+        lineNumber++;
+        String trimmed = line.trim();
+        if (trimmed.length() == 0 || trimmed.charAt(0) == '#') {
+          continue;
+        }
+        String[] pieces = line.split("\t", 2);
+        if (pieces.length < 2 || pieces[0].trim().length() == 0) {
+          throw new IllegalArgumentException("Expected lines of the format name (tab) pattern.  " +
+                                             "Line number " + lineNumber + " of " + filename + " does not match.");
+        }
+        String name = pieces[0].trim();
+        // the name is used for the file of matches, which has to be in the output directory
+        if (name.indexOf('/') >= 0 || name.indexOf('\\') >= 0 || name.contains("..")) {
+          throw new IllegalArgumentException("Pattern names can't contain a path separator or \"..\".  " +
+                                             "Line number " + lineNumber + " of " + filename + " has the name " + name + ".");
+        }
+        if ( ! names.add(name)) {
+          throw new IllegalArgumentException("The name " + name + " is given to more than one pattern in " + filename);
+        }
+        patterns.add(new Pair<String,TregexPattern>(name, tpc.compile(pieces[1])));
+      }
+    } finally {
+      reader.close();
+    }
+    return patterns;
+  }
+
+  /**
+   * Searches the trees for many patterns at once, for the
+   * <code>-patterns</code> option of {@link #main}.  What would be printed
+   * for each pattern searched for alone is written to
+   * <code>name.txt</code> in <code>outputDir</code>, and then the number
+   * of matches of each pattern is printed.
+   */
+  private static void searchPatterns(List<Pair<String,TregexPattern>> patterns, String[] handles, String encoding,
+                                     String treePrintFormats, File outputDir, String compression,
+                                     int numThreads, PrintWriter errPW) throws IOException {
+    if ( ! TRegexTreeVisitor.printNumMatchesToStdOut && ! outputDir.isDirectory() && ! outputDir.mkdirs()) {
+      throw new IOException("Can't create the directory " + outputDir);
+    }
+    List<TRegexTreeVisitor> visitors = new ArrayList<TRegexTreeVisitor>();
+    for (Pair<String,TregexPattern> pattern : patterns) {
+      OutputStream out;
+      if (TRegexTreeVisitor.printNumMatchesToStdOut) {
+        // -C: only the counts are wanted
+        out = new OutputStream() {
+          @Override
+          public void write(int b) { }
+          @Override
+          public void write(byte[] b, int off, int len) { }
+        };
+      } else {
+        String filename = pattern.first() + ".txt";
+        if ("gzip".equals(compression)) {
+          filename += ".gz";
+        } else if ("bzip2".equals(compression)) {
+          filename += ".bz2";
+        }
+        out = new BufferedOutputStream(new FileOutputStream(new File(outputDir, filename)));
+        if (compression != null) {
+          out = IOUtils.getCompressingOutputStream(out, compression);
+        }
+      }
+      visitors.add(new TRegexTreeVisitor(pattern.second(), handles, encoding, treePrintFormats, out));
+    }
+
+    PatternSearch search = new PatternSearch(visitors, numThreads);
+    if (index != null) {
+      BitSet candidates = new BitSet(index.size());
+      if (search.searchAll) {
+        candidates.set(0, index.size());
+      } else {
+        for (Pair<String,TregexPattern> pattern : patterns) {
+          candidates.or(index.candidates(pattern.second()));
+        }
+      }
+      errPW.println("Searching " + candidates.cardinality() + " of " + index.size() + " trees");
+      for (int n = candidates.nextSetBit(0); n >= 0; n = candidates.nextSetBit(n + 1)) {
+        search.add(index.getTree(n), n, index.getFile(n).getPath());
+      }
+      index.close();
+    } else {
+      int n = 0;
+      for (Tree t : treebank) {
+        String filename = (treebank instanceof DiskTreebank ? ((DiskTreebank) treebank).getCurrentFilename() : null);
+        search.add(t, n++, filename);
+      }
+    }
+    search.finish();
+
+    PrintWriter pw = new PrintWriter(new OutputStreamWriter(System.out, encoding));
+    for (int i = 0; i < patterns.size(); i++) {
+      TRegexTreeVisitor vis = visitors.get(i);
+      vis.close();
+      pw.println(patterns.get(i).first() + "\t" + vis.numMatches());
+    }
+    pw.flush();
+  }
+
   private static Treebank treebank; // used by main method, must be accessible
+  private static TregexIndex index; // used by main method with -index
 
   // not thread-safe, but only used by TregexPattern's main method
   private static class TRegexTreeVisitor implements TreeVisitor {
@@ -754,42 +1064,57 @@ public abstract class TregexPattern implements Serializable {
     static boolean printFilename = false;
     static boolean oneMatchPerRootNode = false;
     static boolean reportTreeNumbers = false;
+    static TreeWriter.FlushPolicy flushPolicy = TreeWriter.FlushPolicy.WHEN_FULL;
 
     static TreePrint tp;
     private PrintWriter pw;
 
     int treeNumber = 0;
+    /** The file of the tree being visited, when it is set for each tree rather than found from the treebank */
+    String filename; // = null;
 
     private final TregexPattern p;
     String[] handles;
     int numMatches;
 
-    TRegexTreeVisitor(TregexPattern p, String[] handles, String encoding) {
+    TRegexTreeVisitor(TregexPattern p, String[] handles, String encoding, String treePrintFormats, OutputStream out) {
       this.p = p;
       this.handles = handles;
       try {
-        pw = new PrintWriter(new OutputStreamWriter(System.out, encoding),true);
+        if (TreeWriter.handles(treePrintFormats)) {
+          pw = new TreeWriter(out, encoding, treePrintFormats, flushPolicy);
+        } else {
+          pw = new PrintWriter(new OutputStreamWriter(out, encoding),true);
+        }
       }
       catch (UnsupportedEncodingException e) {
         System.err.println("Error -- encoding " + encoding + " is unsupported.  Using platform default PrintWriter instead.");
-        pw = new PrintWriter(System.out,true);
+        pw = new PrintWriter(out,true);
       }
     }
 
     // todo: add an option to only print each tree once, regardless.  Most useful in conjunction with -w
     public void visitTree(Tree t) {
+      visitTree(t, new IdentityHashMap<Tree, Tree>());
+    }
+
+    /**
+     * Visits a tree, looking up the parents of its nodes in a map which
+     * can be shared with the visitors of other patterns.
+     */
+    void visitTree(Tree t, IdentityHashMap<Tree, Tree> nodesToParents) {
       treeNumber++;
       if (printTree) {
         pw.print(treeNumber+":");
         pw.println("Next tree read:");
-        tp.printTree(t,pw);
+        printTree(t);
       }
-      TregexMatcher match = p.matcher(t);
+      TregexMatcher match = p.matcher(t, nodesToParents);
       if(printNonMatchingTrees) {
         if(match.find())
           numMatches++;
         else
-          tp.printTree(t,pw);
+          printTree(t);
         return;
       }
       Tree lastMatchingRootNode = null;
@@ -801,10 +1126,16 @@ public abstract class TregexPattern implements Serializable {
             lastMatchingRootNode = match.getMatch();
         }
         numMatches++;
-        if (printFilename && treebank instanceof DiskTreebank) {
+        if (printFilename && filename != null) {
+          pw.print("# ");
+          pw.println(filename);
+        } else if (printFilename && treebank instanceof DiskTreebank) {
           DiskTreebank dtb = (DiskTreebank) treebank;
           pw.print("# ");
           pw.println(dtb.getCurrentFilename());
+        } else if (printFilename && index != null) {
+          pw.print("# ");
+          pw.println(index.getFile(treeNumber - 1).getPath());
         }
         if(printSubtreeCode) {
           pw.print(treeNumber);
@@ -820,7 +1151,7 @@ public abstract class TregexPattern implements Serializable {
             pw.println("Found a full match:");
           }
           if (printWholeTree) {
-            tp.printTree(t,pw);
+            printTree(t);
           } else if (handles != null) {
             if (printTree) {
               pw.println("Here's the node you were interested in:");
@@ -830,31 +1161,209 @@ public abstract class TregexPattern implements Serializable {
               if (labeledNode == null) {
                 System.err.println("Error!!  There is no matched node \"" + handle + "\"!  Did you specify such a label in the pattern?");
               } else {
-                tp.printTree(labeledNode,pw);
+                printTree(labeledNode);
               }
             }
           } else {
-            tp.printTree(match.getMatch(),pw);
+            printTree(match.getMatch());
           }
           // pw.println();  // TreePrint already puts a blank line in
         } // end if (printMatches)
       } // end while match.find()
     } // end visitTree
 
+    private void printTree(Tree t) {
+      if (pw instanceof TreeWriter) {
+        ((TreeWriter) pw).printTree(t);
+      } else {
+        tp.printTree(t,pw);
+      }
+    }
+
+    void printNumMatches() {
+      pw.println(numMatches);
+    }
+
+    void flush() {
+      pw.flush();
+    }
+
+    void close() {
+      pw.close();
+    }
+
     public int numMatches() {
       return numMatches;
     }
 
   } // end class TRegexTreeVisitor
 
+
+  /**
+   * Matches the patterns of many visitors on each tree, for the
+   * <code>-patterns</code> option.  Each tree's map of parents is shared by
+   * all of the patterns, and a pattern isn't matched on a tree that lacks
+   * its required labels, unless every tree is to be printed.  On several
+   * threads, trees are searched in batches, each visitor going through a
+   * whole batch on one thread; the maps of parents are then filled in
+   * before the batch is searched, as they can't be filled in by the
+   * threads as they go.
+   */
+  private static class PatternSearch {
+
+    /** How many trees are read before they are searched, on several threads */
+    private static final int BATCH_SIZE = 1000;
+
+    private final List<TRegexTreeVisitor> visitors;
+    final boolean searchAll;
+    /** Whether any pattern has required labels, so that each tree's labels are needed */
+    private final boolean findLabels;
+    private final MulticoreWrapper<TRegexTreeVisitor,TRegexTreeVisitor> wrapper;
+    private List<SearchedTree> batch = new ArrayList<SearchedTree>();
+
+    PatternSearch(List<TRegexTreeVisitor> visitors, int numThreads) {
+      this.visitors = visitors;
+      searchAll = TRegexTreeVisitor.printNonMatchingTrees || TRegexTreeVisitor.printTree;
+      boolean requiresLabels = false;
+      for (TRegexTreeVisitor vis : visitors) {
+        if ( ! vis.p.requiredLabels().isEmpty() || ! vis.p.requiredLabelPrefixes().isEmpty()) {
+          requiresLabels = true;
+        }
+      }
+      findLabels = requiresLabels && ! searchAll;
+      if (numThreads > 1) {
+        wrapper = new MulticoreWrapper<TRegexTreeVisitor,TRegexTreeVisitor>(numThreads, new ThreadsafeProcessor<TRegexTreeVisitor,TRegexTreeVisitor>() {
+          public TRegexTreeVisitor process(TRegexTreeVisitor vis) {
+            for (SearchedTree tree : batch) {
+              visit(vis, tree);
+            }
+            return vis;
+          }
+        }, Math.max(numThreads, visitors.size()));
+      } else {
+        wrapper = null;
+      }
+    }
+
+    /** A tree to be searched, with what is shared by the patterns */
+    private static class SearchedTree {
+      final Tree tree;
+      final int number;
+      final String filename;
+      final IdentityHashMap<Tree,Tree> nodesToParents = new IdentityHashMap<Tree,Tree>();
+      Set<String> labels; // = null;
+
+      SearchedTree(Tree tree, int number, String filename) {
+        this.tree = tree;
+        this.number = number;
+        this.filename = filename;
+      }
+    }
+
+    /**
+     * Searches a tree, now or with the rest of its batch.
+     *
+     * @param t The tree
+     * @param number The number of trees before it
+     * @param filename The file it is from, or null if that isn't known
+     */
+    void add(Tree t, int number, String filename) {
+      SearchedTree tree = new SearchedTree(t, number, filename);
+      if (findLabels) {
+        tree.labels = new HashSet<String>();
+        for (Tree node : t) {
+          if (node.value() != null) {
+            tree.labels.add(node.value());
+          }
+        }
+      }
+      if (wrapper == null) {
+        for (TRegexTreeVisitor vis : visitors) {
+          visit(vis, tree);
+        }
+        return;
+      }
+      fillNodesToParents(t, null, tree.nodesToParents);
+      batch.add(tree);
+      if (batch.size() >= BATCH_SIZE) {
+        searchBatch();
+      }
+    }
+
+    private void searchBatch() {
+      for (TRegexTreeVisitor vis : visitors) {
+        wrapper.put(vis);
+      }
+      for (int i = 0; i < visitors.size(); i++) {
+        wrapper.poll();
+      }
+      batch = new ArrayList<SearchedTree>();
+    }
+
+    /** Searches the trees still waiting in a batch */
+    void finish() {
+      if (wrapper != null) {
+        if ( ! batch.isEmpty()) {
+          searchBatch();
+        }
+        wrapper.join();
+      }
+    }
+
+    private void visit(TRegexTreeVisitor vis, SearchedTree tree) {
+      if (tree.labels != null && ! hasRequiredLabels(vis.p, tree.labels)) {
+        return;
+      }
+      vis.treeNumber = tree.number;
+      vis.filename = tree.filename;
+      vis.visitTree(tree.tree, tree.nodesToParents);
+    }
+
+    private static boolean hasRequiredLabels(TregexPattern p, Set<String> labels) {
+      if ( ! labels.containsAll(p.requiredLabels())) {
+        return false;
+      }
+      for (String prefix : p.requiredLabelPrefixes()) {
+        boolean found = false;
+        for (String label : labels) {
+          if (label.startsWith(prefix)) {
+            found = true;
+            break;
+          }
+        }
+        if ( ! found) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static void fillNodesToParents(Tree node, Tree parent, IdentityHashMap<Tree,Tree> nodesToParents) {
+      nodesToParents.put(node, parent);
+      for (Tree child : node.children()) {
+        fillNodesToParents(child, node, nodesToParents);
+      }
+    }
+
+  } // end class PatternSearch
+
   private static final long serialVersionUID = 5060298043763944913L;
 
 
   public static class TRegexTreeReaderFactory implements TreeReaderFactory {
 
     private final TreeNormalizer tn;
+    private final TreeFactory tf;
 
     public TRegexTreeReaderFactory() {
+      this(new LabeledScoredTreeFactory());
+    }
+
+    /**
+     * Reads trees whose nodes are made by <code>tf</code>, such as a
+     * {@link ParentedTreeFactory} for trees whose nodes know their parents.
+     */
+    public TRegexTreeReaderFactory(TreeFactory tf) {
       this(new TreeNormalizer() {
         /**
          *
@@ -869,15 +1378,20 @@ public abstract class TregexPattern implements Serializable {
             return str;
           }
         }
-      });
+      }, tf);
     }
 
     public TRegexTreeReaderFactory(TreeNormalizer tn) {
+      this(tn, new LabeledScoredTreeFactory());
+    }
+
+    public TRegexTreeReaderFactory(TreeNormalizer tn, TreeFactory tf) {
       this.tn = tn;
+      this.tf = tf;
     }
 
     public TreeReader newTreeReader(Reader in) {
-      return new PennTreeReader(new BufferedReader(in), new LabeledScoredTreeFactory(), tn);
+      return new FastPennTreeReader(in, tf, tn);
     }
 
   } // end class TRegexTreeReaderFactory
@@ -127,6 +127,7 @@ public class TregexPatternCompiler {
       throw new TregexParseException("Could not parse " + tregex, e);
     }
     pattern.setPatternString(tregex);
+    pattern.findRequiredLabels();
     return pattern;
   }
 
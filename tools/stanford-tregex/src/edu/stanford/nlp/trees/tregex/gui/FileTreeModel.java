@@ -10,7 +10,9 @@ import javax.swing.tree.TreeNode;
 import javax.swing.tree.TreePath;
 
 import edu.stanford.nlp.io.NumberRangesFileFilter;
+import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.trees.DiskTreebank;
+import edu.stanford.nlp.trees.IndexedTreebank;
 import edu.stanford.nlp.trees.TreeReaderFactory;
 import edu.stanford.nlp.trees.Treebank;
 import edu.stanford.nlp.trees.tregex.TregexPattern;
@@ -145,7 +147,13 @@ public class FileTreeModel extends DefaultTreeModel implements FileTreeNodeListe
     List<FileTreeNode> newFiles = new ArrayList<FileTreeNode>();
     findLoadableFiles(filters, files, newFiles, FileTreeModel.this.getRoot());//findLoadableFiles updates newFiles
     for(FileTreeNode fileNode : newFiles) {
-      Treebank treebank = new DiskTreebank(trf, curEncoding);
+      // trees are read from a file as they are needed, by number if it can be indexed
+      Treebank treebank;
+      if (IOUtils.isCompressedFileName(fileNode.getFile().getName())) {
+        treebank = new DiskTreebank(trf, curEncoding);
+      } else {
+        treebank = new IndexedTreebank(trf, curEncoding);
+      }
       treebank.loadPath(fileNode.getFile(), null, true);
       fileNode.setTreebank(treebank);
     }
@@ -41,9 +41,21 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.BufferedReader;
 import java.io.StringReader;
+import java.lang.ref.SoftReference;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
@@ -51,9 +63,12 @@ import javax.swing.event.ChangeListener;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 
+import edu.stanford.nlp.ling.HasIndex;
 import edu.stanford.nlp.trees.HeadFinder;
+import edu.stanford.nlp.trees.IndexedTreebank;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.TreeVisitor;
+import edu.stanford.nlp.trees.Treebank;
 import edu.stanford.nlp.trees.tregex.TregexMatcher;
 import edu.stanford.nlp.trees.tregex.TregexPattern;
 import edu.stanford.nlp.trees.tregex.TregexPatternCompiler;
@@ -64,6 +79,8 @@ import edu.stanford.nlp.trees.tregex.tsurgeon.TsurgeonPattern;
 /**
  * Class representing the panel that gets input from the user and does (in a thread-safe manner)
  * the computation for finding tree matches and performing tsurgeon operations.  Also displays statistics.
+ * The active treebanks are searched in parallel, a file to a thread, and the matches are shown
+ * as they are found, in the order of the files.
  *
  * @author Anna Rafferty
  */
@@ -89,6 +106,8 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
   private JButton tsurgeonHelp;
   private JButton cancelTsurgeon;
   private Thread searchThread;
+  private volatile boolean searchCancelled; // = false;
+  private ExecutorService searchPool; // = null;
   private JButton historyButton;
   private JProgressBar progressBar;
   private JButton browseButton;
@@ -98,6 +117,13 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
   private JFrame tsurgeonHelpFrame;
 
   private JButton runScript;
+
+  /** A file's matches are handed on once there are this many trees, or they are this old */
+  private static final int MATCH_BATCH_SIZE = 100;
+  private static final long MATCH_BATCH_MILLIS = 250;
+
+  /** Put on a file's queue of matches when it has been searched */
+  private static final TRegexGUITreeVisitor END_OF_FILE = new TRegexGUITreeVisitor(null);
   
   public static synchronized InputPanel getInstance() {
     if (inputPanel == null)
@@ -450,18 +476,14 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
     if (source == findMatches) {
       runSearch();
     } else if (source == cancel) {
-      if (searchThread != null) {
-        searchThread.interrupt();
-      }
+      searchCancelled = true;
       cancel.setEnabled(false);
     } else if (source == help) {
       displayHelp();
     } else if (source == tsurgeonHelp) {
       displayTsurgeonHelp();
     } else if (source == cancelTsurgeon) {
-      if (searchThread != null) {
-        searchThread.interrupt();
-      }
+      searchCancelled = true;
       cancelTsurgeon.setEnabled(false);
     } else if (source == runScript) {
       runScript();
@@ -557,8 +579,16 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
         for (int i = 0; i < treebanks.size(); i++) {
           FileTreeNode treebank = treebanks.get(i);
           String filename = treebank.getFilename();
-          for (Tree curTree : treebank.getTreebank()) {
-            trees.add(new TreeFromFile(curTree, filename));
+          if (treebank.getTreebank() instanceof IndexedTreebank) {
+            // the trees are only read when they are shown
+            IndexedTreebank indexed = (IndexedTreebank) treebank.getTreebank();
+            for (int n = 1, size = indexed.size(); n <= size; n++) {
+              trees.add(new TreeFromFile(indexed, n, filename));
+            }
+          } else {
+            for (Tree curTree : treebank.getTreebank()) {
+              trees.add(new TreeFromFile(curTree, filename));
+            }
           }
           updateProgressBar(multiplier*(i+1));
         }
@@ -583,6 +613,7 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
     setTregexState(true);
     MatchesPanel.getInstance().removeAllMatches();
     this.setPreferredSize(this.getSize());
+    searchCancelled = false;
     searchThread = new Thread() {
       @Override
       public void run() {
@@ -593,7 +624,9 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
             useProgressBar(true);
           }
         });
-        final TRegexGUITreeVisitor visitor = getMatchTreeVisitor(text,this);
+        // with Tdiff on, the matches have to be compared with the reference treebank all together
+        final boolean showAsFound = ! TregexGUI.getInstance().isTdiffEnabled();
+        final TRegexGUITreeVisitor visitor = getMatchTreeVisitor(text, showAsFound);
         if (visitor != null) {
 
           SwingUtilities.invokeLater(new Runnable() {
@@ -601,7 +634,9 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
               useProgressBar(false);
               updateFoundStats(text, visitor.getMatches().size(), visitor.numUniqueMatches());
               //addToHistoryList(text, visitor.getMatches().size(), visitor.numUniqueMatches());
-              MatchesPanel.getInstance().setMatches(visitor.getMatches(), visitor.getMatchedParts());
+              if ( ! showAsFound) {
+                MatchesPanel.getInstance().setMatches(visitor.getMatches(), visitor.getMatchedParts());
+              }
               MatchesPanel.getInstance().focusOnList();
             }
           });
@@ -636,6 +671,7 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
   private void runScript() {
     setTsurgeonState(true);
     final String script = tsurgeonScript.getText();
+    searchCancelled = false;
     searchThread = new Thread() {
       @Override
       public void run() {
@@ -647,9 +683,9 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
               useProgressBar(true);
             }
           });
-          final TRegexGUITreeVisitor visitor = getMatchTreeVisitor(text,this);
+          final TRegexGUITreeVisitor visitor = getMatchTreeVisitor(text, false);
           if (visitor == null) return; //means the tregex errored out
-          if (this.isInterrupted()) {
+          if (searchCancelled) {
             returnToValidState(text, visitor, new ArrayList<TreeFromFile>());
             return;
           }
@@ -659,7 +695,7 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
           List<TreeFromFile> trees = visitor.getMatches();
           final List<TreeFromFile> modifiedTrees = new ArrayList<TreeFromFile>();
           for (TreeFromFile tff : trees) {
-            if (this.isInterrupted()) {
+            if (searchCancelled) {
               returnToValidState(text, visitor, trees);
               return;
             }
@@ -723,45 +759,160 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
 
   /**
    * Check all active treebanks to find the trees that match the given pattern when interpreted
-   * as a tregex pattern.
+   * as a tregex pattern.  Each file is searched by a thread of the search pool, while this one
+   * collects the matches in the order of the files, updating the progress bar as it goes.  The
+   * search stops soon after it is cancelled, with the matches found up to then.
    *
    * @param patternString string version of the tregex pattern you wish to match
-   * @param t The thread we are running on
+   * @param showAsFound whether to add the matches to the MatchesPanel as they are found
    * @return tree visitor that contains the trees that were matched as well as the parts of those trees that matched
    */
-  private TRegexGUITreeVisitor getMatchTreeVisitor(String patternString, Thread t) {
+  private TRegexGUITreeVisitor getMatchTreeVisitor(String patternString, boolean showAsFound) {
     TRegexGUITreeVisitor vis = null;
+    AtomicBoolean stopped = new AtomicBoolean();
+    List<Future<?>> searches = new ArrayList<Future<?>>();
     try {
       TregexPattern pattern = compiler.compile(patternString);
       vis = new TRegexGUITreeVisitor(pattern); //handles);
       List<FileTreeNode> treebanks = FilePanel.getInstance().getActiveTreebanks();
-      double multiplier = 100.0/treebanks.size();
-      int treebankNum = 1;
+      if (searchPool == null) {
+        searchPool = newSearchPool();
+      }
+      AtomicInteger filesSearched = new AtomicInteger();
+      List<BlockingQueue<TRegexGUITreeVisitor>> matches = new ArrayList<BlockingQueue<TRegexGUITreeVisitor>>();
       for (FileTreeNode treebank : treebanks) {
-        if (t.isInterrupted()) { //get out as quickly as possible if interrupted
-          t.interrupt();
-          // cdm 2008: I added here resetting the buttons or else it didn't seem to happen; not quite sure this is the right place to do it but.
-          SwingUtilities.invokeLater(new Runnable() {
-            public void run() {
-              setTregexState(false);
-              InputPanel.this.searchThread = null;
+        BlockingQueue<TRegexGUITreeVisitor> fileMatches = new LinkedBlockingQueue<TRegexGUITreeVisitor>();
+        matches.add(fileMatches);
+        searches.add(searchPool.submit(new FileSearch(pattern, treebank.getFilename().intern(), treebank.getTreebank(),
+                                                      fileMatches, stopped, filesSearched)));
+      }
+
+      for (int i = 0; i < treebanks.size() && ! searchCancelled; i++) {
+        String progress = treebanks.get(i).getFile().getName() + " (file " + (i + 1) + " of " + treebanks.size() + ')';
+        BlockingQueue<TRegexGUITreeVisitor> fileMatches = matches.get(i);
+        while ( ! searchCancelled) {
+          updateProgressBar(100.0 * filesSearched.get() / treebanks.size(),
+                            progress + ": " + vis.getMatches().size() + " trees matched");
+          TRegexGUITreeVisitor batch = fileMatches.poll(MATCH_BATCH_MILLIS, TimeUnit.MILLISECONDS);
+          if (batch == END_OF_FILE) {
+            break;
+          } else if (batch != null) {
+            vis.addMatches(batch);
+            if (showAsFound) {
+              showMatches(batch);
             }
-          });
-          return vis;
+          }
+        }
+        if ( ! searchCancelled) {
+          try {
+            searches.get(i).get();
+          } catch (ExecutionException ee) {
+            // pass on what went wrong in the search of the file
+            Throwable cause = ee.getCause();
+            if (cause instanceof Error) {
+              throw (Error) cause;
+            }
+            throw (Exception) cause;
+          }
         }
-        vis.setFilename(treebank.getFilename().intern());
-        treebank.getTreebank().apply(vis);
-        updateProgressBar(multiplier*treebankNum++);
       }
     } catch (OutOfMemoryError oome) {
       vis = null;
       doError("Sorry, search aborted as out of memory.\nTry either running Tregex with more memory or sticking to searches that don't produce thousands of matches.", oome);
     } catch (Exception e) {
       doError("Sorry, there was an error compiling or running the Tregex pattern.  Please press Help if you need assistance.", e);
+    } finally {
+      // stop the searches of files still going, if it was cancelled or went wrong
+      stopped.set(true);
+      for (Future<?> search : searches) {
+        search.cancel(false);
+      }
     }
     return vis;
   }
 
+  /** Adds a batch of matches to the MatchesPanel, on the event dispatching thread */
+  private static void showMatches(final TRegexGUITreeVisitor batch) {
+    SwingUtilities.invokeLater(new Runnable() {
+      public void run() {
+        MatchesPanel.getInstance().addMatches(batch.getMatches(), batch.getMatchedParts());
+      }
+    });
+  }
+
+  private static ExecutorService newSearchPool() {
+    int nThreads = Runtime.getRuntime().availableProcessors();
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(nThreads, nThreads, 10, TimeUnit.SECONDS,
+                                                     new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "TregexGUI search");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    // so that no threads are kept while no search is being run
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+
+  /**
+   * Searches the trees of one file, putting the matches on a queue a batch at
+   * a time, and then END_OF_FILE, whether or not the search finished.
+   */
+  private static class FileSearch implements Runnable {
+
+    private final TregexPattern pattern;
+    private final String filename;
+    private final Treebank treebank;
+    private final BlockingQueue<TRegexGUITreeVisitor> matches;
+    private final AtomicBoolean stopped;
+    private final AtomicInteger filesSearched;
+
+    FileSearch(TregexPattern pattern, String filename, Treebank treebank, BlockingQueue<TRegexGUITreeVisitor> matches,
+               AtomicBoolean stopped, AtomicInteger filesSearched) {
+      this.pattern = pattern;
+      this.filename = filename;
+      this.treebank = treebank;
+      this.matches = matches;
+      this.stopped = stopped;
+      this.filesSearched = filesSearched;
+    }
+
+    public void run() {
+      try {
+        TRegexGUITreeVisitor batch = newBatch();
+        long batchStart = System.currentTimeMillis();
+        for (Tree t : treebank) {
+          if (stopped.get()) {
+            return;
+          }
+          batch.visitTree(t);
+          int size = batch.getMatches().size();
+          if (size >= MATCH_BATCH_SIZE || (size > 0 && System.currentTimeMillis() - batchStart >= MATCH_BATCH_MILLIS)) {
+            matches.add(batch);
+            batch = newBatch();
+            batchStart = System.currentTimeMillis();
+          }
+        }
+        if ( ! batch.getMatches().isEmpty()) {
+          matches.add(batch);
+        }
+      } finally {
+        filesSearched.incrementAndGet();
+        matches.add(END_OF_FILE);
+      }
+    }
+
+    private TRegexGUITreeVisitor newBatch() {
+      TRegexGUITreeVisitor batch = new TRegexGUITreeVisitor(pattern);
+      batch.setFilename(filename);
+      batch.setTreebank(treebank);
+      return batch;
+    }
+
+  } // end class FileSearch
+
 
   /**
    * Called when a pattern cannot be compiled or some other error occurs; resets gui to valid state
@@ -795,6 +946,25 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
     });
   }
 
+  /**
+   * Thread safe way to update the progress bar, with a note on what is being done shown on it
+   * @param progress Percentage of the way through that we are.
+   * @param note What to show on the progress bar
+   */
+  public void updateProgressBar(final double progress, final String note) {
+    if(progressBar == null)
+      return;
+    SwingUtilities.invokeLater(new Runnable() {
+      public void run() {
+        if (progressBar != null) {
+          progressBar.setValue((int) progress);
+          progressBar.setStringPainted(true);
+          progressBar.setString(note);
+        }
+      }
+    });
+  }
+
 
   /**
    * Simple class for storing history objects that go nicely into a toString for saving
@@ -853,6 +1023,7 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
     private final List<TreeFromFile> matchedTrees;
     private final HashMap<TreeFromFile,List<Tree>> matchedParts;
     private String filename = "";
+    private IndexedTreebank indexedTreebank; // = null;
 
 
     TRegexGUITreeVisitor(TregexPattern p) { //String[] handles) {
@@ -866,6 +1037,15 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
       return matchedParts;
     }
 
+    /**
+     * Adds the matches found by another visitor after those found by this one.
+     */
+    void addMatches(TRegexGUITreeVisitor other) {
+      matchedTrees.addAll(other.matchedTrees);
+      matchedParts.putAll(other.matchedParts);
+      totalMatches += other.totalMatches;
+    }
+
     public void visitTree(Tree t) {
       int numMatches = 0;
       TregexMatcher match = p.matcher(t);
@@ -878,7 +1058,14 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
         numMatches++;
       } // end while match.find()
       if(numMatches > 0) {
-        TreeFromFile tff = new TreeFromFile(t, filename);
+        TreeFromFile tff;
+        if (indexedTreebank != null && t.label() instanceof HasIndex) {
+          // don't keep the tree, which can be read again
+          tff = new TreeFromFile(indexedTreebank, ((HasIndex) t.label()).sentIndex(), filename);
+          matchedPartList = new MatchedNodes(tff, t, matchedPartList);
+        } else {
+          tff = new TreeFromFile(t, filename);
+        }
         matchedTrees.add(tff);
         matchedParts.put(tff,matchedPartList);
         totalMatches += numMatches;
@@ -906,6 +1093,14 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
       this.filename = curFilename.intern();
     }
 
+    /**
+     * Sets the treebank the trees visited come from.  If it is an
+     * IndexedTreebank, the matches refer to their trees by number in it.
+     */
+    public void setTreebank(Treebank treebank) {
+      indexedTreebank = (treebank instanceof IndexedTreebank ? (IndexedTreebank) treebank : null);
+    }
+
     public TregexPattern getPattern() {
       return p;
     }
@@ -913,6 +1108,54 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
   } // end class TRegexTreeVisitor
 
 
+  /**
+   * The matched parts of a tree that is read again when wanted, kept as the
+   * numbers of the matched nodes rather than the nodes themselves.  The
+   * parts are found in the tree when they are first asked for, and kept
+   * while there is memory to spare.
+   */
+  private static class MatchedNodes extends AbstractList<Tree> {
+
+    private final TreeFromFile tff;
+    private final int[] nodeNumbers;
+    private SoftReference<List<Tree>> parts; // = null;
+
+    MatchedNodes(TreeFromFile tff, Tree root, List<Tree> parts) {
+      this.tff = tff;
+      nodeNumbers = new int[parts.size()];
+      for (int i = 0; i < nodeNumbers.length; i++) {
+        nodeNumbers[i] = parts.get(i).nodeNumber(root);
+      }
+    }
+
+    private List<Tree> parts() {
+      List<Tree> found = (parts == null ? null : parts.get());
+      if (found == null) {
+        found = new ArrayList<Tree>(nodeNumbers.length);
+        Tree root = tff.getTree();
+        if (root != null) {
+          for (int nodeNumber : nodeNumbers) {
+            found.add(root.getNodeNumber(nodeNumber));
+          }
+        }
+        parts = new SoftReference<List<Tree>>(found);
+      }
+      return found;
+    }
+
+    @Override
+    public Tree get(int index) {
+      return parts().get(index);
+    }
+
+    @Override
+    public int size() {
+      return nodeNumbers.length;
+    }
+
+  } // end class MatchedNodes
+
+
   private void displayHelp() {
     if (helpFrame != null) {
       helpFrame.setVisible(true);
@@ -37,6 +37,7 @@ import javax.swing.text.Highlighter.Highlight;
 
 import edu.stanford.nlp.swing.TooltipJList;
 import edu.stanford.nlp.trees.Constituent;
+import edu.stanford.nlp.trees.IndexedTreebank;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.Treebank;
 import edu.stanford.nlp.util.Pair;
@@ -223,14 +224,25 @@ public class MatchesPanel extends JPanel implements ListSelectionListener {
           filteredMatchedParts.put(t2, matchedParts.get(t2));
 
         } else if( ! t2.getFilename().equals(refFileName)) {
-          if (treeList == null) //Lazy loading to account for the if statement above
-            treeList = getTreebankAsList(refTreebank.getTreebank());
+          Tree t1;
+          if (refTreebank.getTreebank() instanceof IndexedTreebank) {
+            // read just the tree needed, rather than the whole reference treebank
+            IndexedTreebank refTrees = (IndexedTreebank) refTreebank.getTreebank();
+            if (t2.getSentenceId() > refTrees.size())
+              continue;
+            t1 = refTrees.getTree(t2.getSentenceId());
+            if (t1 == null)
+              continue;
+          } else {
+            if (treeList == null) //Lazy loading to account for the if statement above
+              treeList = getTreebankAsList(refTreebank.getTreebank());
 
-          int treeId = t2.getSentenceId() - 1;
-          if(treeId >= treeList.size())
-            continue;
+            int treeId = t2.getSentenceId() - 1;
+            if(treeId >= treeList.size())
+              continue;
 
-          Tree t1 = treeList.get(treeId);
+            t1 = treeList.get(treeId);
+          }
           Tree treeT2 = t2.getTree();
           Set<Constituent> inT1notT2 = Tdiff.markDiff(t1, treeT2);
           t2.setDiffConstituents(inT1notT2);
@@ -276,6 +288,38 @@ public class MatchesPanel extends JPanel implements ListSelectionListener {
     this.sendToListeners();
   }
 
+  /**
+   * Adds more trees to those displayed in this panel, as a search finds them,
+   * stopping once <code>maxMatches</code> are displayed.  Differences with a
+   * Tdiff reference treebank aren't marked, so use {@link #setMatches} for
+   * those.  Must be called on the event dispatching thread.
+   *
+   * @param matches more trees that match the expression
+   * @param newMatchedParts the parts of those trees that matched
+   */
+  public void addMatches(List<TreeFromFile> matches, Map<TreeFromFile, List<Tree>> newMatchedParts) {
+    DefaultListModel model = (DefaultListModel) list.getModel();
+    boolean wasEmpty = model.isEmpty();
+    if (newMatchedParts != null) {
+      matchedParts.putAll(newMatchedParts);
+    }
+    for (TreeFromFile t : matches) {
+      if (model.size() >= maxMatches) break;
+      if (!showOnlyMatchedPortion || newMatchedParts == null) {
+        model.addElement(t);
+      } else {
+        for (Tree match : newMatchedParts.get(t)) {
+          if (model.size() >= maxMatches) break;
+          model.addElement(new TreeFromFile(match, t.getFilename()));
+        }
+      }
+    }
+    if (wasEmpty && ! model.isEmpty()) {
+      list.setSelectedIndex(0);
+      this.sendToListeners();
+    }
+  }
+
 
 
   /**
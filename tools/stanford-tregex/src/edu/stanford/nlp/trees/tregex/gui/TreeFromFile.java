@@ -9,6 +9,7 @@ import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.HasIndex;
 import edu.stanford.nlp.ling.Sentence;
 import edu.stanford.nlp.trees.Constituent;
+import edu.stanford.nlp.trees.IndexedTreebank;
 import edu.stanford.nlp.trees.LabeledScoredTreeReaderFactory;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.TreeNormalizer;
@@ -16,14 +17,18 @@ import edu.stanford.nlp.trees.TreeNormalizer;
 /**
  * Simple utility class for storing a tree as well as the sentence the tree represents and
  * a label with the filename of the file that the tree was stored in.
+ * A tree from an {@link IndexedTreebank} is only stored as its number in the treebank, and
+ * is read again when it is wanted.  The sentence and label are only made when first asked for.
  *
  * @author Anna Rafferty
  */
 public class TreeFromFile {
 
-  private final String treeString;
+  private final String treeString; // null for a tree from an IndexedTreebank
+  private final IndexedTreebank treebank; // = null;
   private String filename;
-  private String sentence = "";
+  private String sentence; // = null;
+  private String docID; // = null;
   private int sentId = -1;
   private JTextField label; // = null;
 
@@ -33,13 +38,11 @@ public class TreeFromFile {
 
   public TreeFromFile(Tree t) {
     this.treeString = t.toString();
-    sentence = Sentence.listToString(t.yield());
+    this.treebank = null;
     if(t.label() instanceof HasIndex) {
       sentId = ((CoreLabel)t.label()).sentIndex();
-      filename = ((CoreLabel)t.label()).docID();
-
-      if(sentId != -1 && filename != null && !filename.equals(""))
-      	sentence = String.format("%s-%d   %s", filename,sentId,sentence);
+      docID = ((CoreLabel)t.label()).docID();
+      filename = docID;
     }
   }
 
@@ -48,6 +51,21 @@ public class TreeFromFile {
     this.filename = filename;
   }
 
+  /**
+   * Refers to a tree of an IndexedTreebank, without reading it.
+   *
+   * @param treebank The treebank the tree is in
+   * @param sentId The number of the tree in the treebank, counting from 1
+   * @param filename The file to show the tree as being from
+   */
+  public TreeFromFile(IndexedTreebank treebank, int sentId, String filename) {
+    this.treeString = null;
+    this.treebank = treebank;
+    this.sentId = sentId;
+    this.docID = treebank.getFile().getName();
+    this.filename = filename;
+  }
+
   public String getFilename() {
     return filename;
   }
@@ -59,6 +77,9 @@ public class TreeFromFile {
   public int getSentenceId() { return sentId; }
 
   public Tree getTree() {
+    if (treebank != null) {
+      return treebank.getTree(sentId);
+    }
     try {
       // return Tree.valueOf(treeString, new LabeledScoredTreeReaderFactory(new TreeNormalizer()));
       return Tree.valueOf(treeString, FileTreeModel.getTRF());
@@ -78,11 +99,22 @@ public class TreeFromFile {
 
   @Override
   public String toString() {
-    if (sentence.length() == 0)
-      sentence = "* deleted *";
+    if (sentence == null) {
+      sentence = makeSentence();
+    }
     return sentence;
   }
 
+  private String makeSentence() {
+    Tree t = getTree();
+    String s = (t == null ? "" : Sentence.listToString(t.yield()));
+    if(sentId != -1 && docID != null && !docID.equals(""))
+      s = String.format("%s-%d   %s", docID,sentId,s);
+    if (s.length() == 0)
+      s = "* deleted *";
+    return s;
+  }
+
   public void setDiffConstituents(Set<Constituent> lessConstituents) { diffSet = lessConstituents; }
 
   public Set<Constituent> getDiffConstituents() { return diffSet; }
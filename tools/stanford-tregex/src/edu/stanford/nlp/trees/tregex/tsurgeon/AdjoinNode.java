@@ -24,12 +24,13 @@ class AdjoinNode extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
     // find match and get its parent
-    Tree targetNode = children[0].evaluate(t,m);
+    Tree targetNode = children[0].evaluate(t, m, context);
     Tree parent = targetNode.parent(t);
     // put children underneath target in foot of auxilary tree
-    AuxiliaryTree ft = adjunctionTree.copy(this);
+    AuxiliaryTree ft = adjunctionTree.copy(context);
+    context.coindexer.forget(); // labels are taken out of the tree
     ft.foot.setChildren(targetNode.getChildrenAsList());
     // replace match with root of auxiliary tree
     if (parent==null) {
@@ -37,6 +38,8 @@ class AdjoinNode extends TsurgeonPattern {
     } else {
       int i = parent.indexOf(targetNode);
       parent.setChild(i,ft.tree);
+      context.markChanged(parent);
+      context.markChanged(ft.foot);
       return t;
     }
   }
@@ -46,4 +49,6 @@ class AdjoinNode extends TsurgeonPattern {
     return super.toString() + "<-" + adjunctionTree.toString();
   }
 
+  private static final long serialVersionUID = -3416446451134850355L;
+
 }
@@ -13,12 +13,13 @@ class AdjoinToFootNode extends AdjoinNode {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
     // find match and get its parent
-    Tree targetNode = children[0].evaluate(t,m);
+    Tree targetNode = children[0].evaluate(t, m, context);
     Tree parent = targetNode.parent(t);
     // substitute original node for foot of auxiliary tree.  Foot node is ignored
-    AuxiliaryTree ft = adjunctionTree().copy(this);
+    AuxiliaryTree ft = adjunctionTree().copy(context);
+    context.coindexer.forget(); // labels are taken out of the tree
     // System.err.println("ft=" + ft + "; ft.foot=" + ft.foot + "; ft.tree=" + ft.tree);
     Tree parentOfFoot = ft.foot.parent(ft.tree);
     if (parentOfFoot == null) {
@@ -33,8 +34,12 @@ class AdjoinToFootNode extends AdjoinNode {
       int j = parent.indexOf(targetNode);
       parent.setChild(j,ft.tree);
       parentOfFoot.setChild(i,targetNode);
+      context.markChanged(parent);
+      context.markChanged(parentOfFoot);
       return t;
     }
   }
 
+  private static final long serialVersionUID = 1781186654033623249L;
+
 }
@@ -13,15 +13,20 @@ class AdjoinToHeadNode extends AdjoinNode {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
     // find match
-    Tree targetNode = children[0].evaluate(t,m);
+    Tree targetNode = children[0].evaluate(t, m, context);
     // put children underneath target in foot of auxilary tree
-    AuxiliaryTree ft = adjunctionTree().copy(this);
+    AuxiliaryTree ft = adjunctionTree().copy(context);
+    context.coindexer.forget(); // labels are taken out of the tree
     ft.foot.setChildren(targetNode.getChildrenAsList());
     // put children of auxiliary tree under target.  root of auxiliary tree is ignored.  root of original is maintained.
     targetNode.setChildren(ft.tree.getChildrenAsList());
+    context.markChanged(targetNode);
+    context.markChanged(ft.foot);
     return t;
   }
 
+  private static final long serialVersionUID = 1262154038117315489L;
+
 }
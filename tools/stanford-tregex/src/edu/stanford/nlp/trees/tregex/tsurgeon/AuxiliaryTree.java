@@ -1,8 +1,10 @@
 package edu.stanford.nlp.trees.tregex.tsurgeon;
 
 import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeFactory;
 import edu.stanford.nlp.util.Pair;
 
+import java.io.Serializable;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
@@ -10,7 +12,7 @@ import java.util.regex.Matcher;
 /**
  * @author Roger Levy (rog@nlp.stanford.edu)
  */
-class AuxiliaryTree {
+class AuxiliaryTree implements Serializable {
 
   private final String originalTreeString;
   final Tree tree;
@@ -49,32 +51,34 @@ class AuxiliaryTree {
   }
 
   /**
-   * Copies the Auxiliary tree.  Also, puts the new names->nodes map in the TsurgeonPattern that called copy.
+   * Copies the Auxiliary tree.  Also, puts the new names->nodes map in the context of the current evaluation.
+   * The copy is made of the same kind of nodes as the tree being operated on.
    */
-  public AuxiliaryTree copy(TsurgeonPattern p) {
+  public AuxiliaryTree copy(TsurgeonContext context) {
     Map<String,Tree> newNamesToNodes = new HashMap<String,Tree>();
-    Pair<Tree,Tree> result = copyHelper(tree,newNamesToNodes);
+    Pair<Tree,Tree> result = copyHelper(tree,newNamesToNodes,context.treeFactory());
     //if(! result.first().dominates(result.second()))
       //System.err.println("Error -- aux tree copy doesn't dominate foot copy.");
-    p.root.newNodeNames.putAll(newNamesToNodes);
+    context.newNodeNames.putAll(newNamesToNodes);
+    context.coindexer.labelsAdded(result.first());
     return new AuxiliaryTree(result.first(), result.second(), newNamesToNodes, originalTreeString);
   }
 
   // returns Pair<node,foot>
-  private Pair<Tree,Tree> copyHelper(Tree node,Map<String,Tree> newNamesToNodes) {
+  private Pair<Tree,Tree> copyHelper(Tree node,Map<String,Tree> newNamesToNodes,TreeFactory tf) {
     Tree clone;
     Tree newFoot = null;
     if (node.isLeaf()) {
       if (node == foot) { // found the foot node; pass it up.
-        clone = node.treeFactory().newTreeNode(node.label(),new ArrayList<Tree>(0));
+        clone = tf.newTreeNode(node.label(),new ArrayList<Tree>(0));
         newFoot = clone;
       } else {
-        clone = node.treeFactory().newLeaf(node.label().labelFactory().newLabel(node.label()));
+        clone = tf.newLeaf(node.label().labelFactory().newLabel(node.label()));
       }
     } else {
       List<Tree> newChildren = new ArrayList<Tree>(node.children().length);
       for (Tree child : node.children()) {
-        Pair<Tree,Tree> newChild = copyHelper(child,newNamesToNodes);
+        Pair<Tree,Tree> newChild = copyHelper(child,newNamesToNodes,tf);
         newChildren.add(newChild.first());
         if (newChild.second() != null) {
           if (newFoot != null) {
@@ -83,7 +87,7 @@ class AuxiliaryTree {
           newFoot = newChild.second();
         }
       }
-      clone = node.treeFactory().newTreeNode(node.label().labelFactory().newLabel(node.label()),newChildren);
+      clone = tf.newTreeNode(node.label().labelFactory().newLabel(node.label()),newChildren);
       if (nodesToNames.containsKey(node)) {
         newNamesToNodes.put(nodesToNames.get(node),clone);
       }
@@ -173,4 +177,6 @@ class AuxiliaryTree {
     }
   }
 
+  private static final long serialVersionUID = 9215334258152767504L;
+
 }
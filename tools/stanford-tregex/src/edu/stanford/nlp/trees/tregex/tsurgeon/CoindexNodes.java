@@ -15,13 +15,17 @@ public class CoindexNodes extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    int newIndex = root.coindexer.generateIndex();
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    int newIndex = context.coindexer.generateIndex(t);
     for(TsurgeonPattern child : children) {
-      Tree node = child.evaluate(t,m);
+      Tree node = child.evaluate(t, m, context);
+      // the new index is the highest, so the generator needn't be told
       node.label().setValue(node.label().value() + coindexationIntroductionString + newIndex);
+      context.markChanged(node);
     }
     return t;
   }
 
+  private static final long serialVersionUID = 5920191400792879657L;
+
 }
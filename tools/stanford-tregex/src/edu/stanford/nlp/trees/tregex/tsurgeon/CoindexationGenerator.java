@@ -6,31 +6,97 @@ import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
 /**
+ * Hands out coindices that aren't used in a tree yet.  The highest index
+ * in the tree is only found, by looking at every label, when an index is
+ * first asked for, so operations that never coindex cost nothing.  After
+ * that it is kept up to date as operations change labels: they report the
+ * labels they add with {@link #labelAdded}, and call {@link #forget} when
+ * they take labels out of the tree, so that it is found again if another
+ * index is asked for.  One generator is shared by all of the operations run
+ * on a tree, across every time they fire.
+ *
  * @author Roger Levy (rog@nlp.stanford.edu)
  */
 class CoindexationGenerator {
 
   private static final Pattern coindexationPattern = Pattern.compile("-([0-9]+)$");
 
-  private int lastIndex;
+  private static final int UNKNOWN = -1;
 
-  public void setLastIndex(Tree t) {
+  /** The highest index in the tree, or UNKNOWN if it has to be found */
+  private int lastIndex = UNKNOWN;
+
+  private void setLastIndex(Tree t) {
     lastIndex = 0;
     for (Tree node : t) {
-      String value = node.label().value();
-      if (value != null) {
-        Matcher m = coindexationPattern.matcher(value);
-        if (m.find()) {
-          int thisIndex = Integer.parseInt(m.group(1));
-          lastIndex = Math.max(thisIndex, lastIndex);
-        }
-      }
+      labelAdded(node.label().value());
     }
   }
 
-  public int generateIndex() {
+  /**
+   * Returns an index higher than any in the tree.
+   *
+   * @param t The root of the tree the index is for
+   */
+  public int generateIndex(Tree t) {
+    if (lastIndex == UNKNOWN) {
+      setLastIndex(t);
+    }
     lastIndex = lastIndex+1;
     return lastIndex;
   }
 
+  /**
+   * Notes that a node with this value was put into the tree.
+   */
+  public void labelAdded(String value) {
+    int thisIndex = index(value);
+    if (thisIndex > lastIndex && lastIndex != UNKNOWN) {
+      lastIndex = thisIndex;
+    }
+  }
+
+  /**
+   * Notes that every node under <code>t</code> was put into the tree.
+   */
+  public void labelsAdded(Tree t) {
+    if (lastIndex != UNKNOWN) {
+      for (Tree node : t) {
+        labelAdded(node.label().value());
+      }
+    }
+  }
+
+  /**
+   * Notes that the value of a node in the tree was changed.
+   */
+  public void labelChanged(String oldValue, String newValue) {
+    if (lastIndex != UNKNOWN && index(oldValue) == lastIndex) {
+      forget();
+    } else {
+      labelAdded(newValue);
+    }
+  }
+
+  /**
+   * Notes that nodes were taken out of the tree, which might have had the
+   * highest index.
+   */
+  public void forget() {
+    lastIndex = UNKNOWN;
+  }
+
+  /** The coindex at the end of a value, or UNKNOWN if it has none */
+  private static int index(String value) {
+    // most labels don't end in a digit, so don't run the regex over them
+    if (value == null || value.length() == 0 || ! Character.isDigit(value.charAt(value.length() - 1))) {
+      return UNKNOWN;
+    }
+    Matcher m = coindexationPattern.matcher(value);
+    if (m.find()) {
+      return Integer.parseInt(m.group(1));
+    }
+    return UNKNOWN;
+  }
+
 }
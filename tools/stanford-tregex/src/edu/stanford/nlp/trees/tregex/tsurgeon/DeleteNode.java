@@ -20,17 +20,21 @@ class DeleteNode extends TsurgeonPattern {
 
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
     Tree result = t;
     for (TsurgeonPattern child : children) {
-      Tree nodeToDelete = child.evaluate(t, m);
+      Tree nodeToDelete = child.evaluate(t, m, context);
       if (nodeToDelete == t) {
         result = null;
       }
       Tree parent = nodeToDelete.parent(t);
       parent.removeChild(Trees.objectEqualityIndexOf(parent,nodeToDelete));
+      context.markChanged(parent);
+      context.coindexer.forget(); // labels are taken out of the tree
     }
     return result;
   }
 
+  private static final long serialVersionUID = -4495490679548004938L;
+
 }
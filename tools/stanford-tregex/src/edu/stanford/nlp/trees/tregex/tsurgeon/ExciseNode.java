@@ -24,9 +24,9 @@ class ExciseNode extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    Tree topNode = children[0].evaluate(t,m);
-    Tree bottomNode = children[1].evaluate(t,m);
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    Tree topNode = children[0].evaluate(t, m, context);
+    Tree bottomNode = children[1].evaluate(t, m, context);
     if(Tsurgeon.verbose) {
       System.err.println("Excising...original tree:");
       t.pennPrint(System.err);
@@ -43,8 +43,13 @@ class ExciseNode extends TsurgeonPattern {
       parent.addChild(i,child);
       i++;
     }
+    context.markChanged(parent);
+    context.coindexer.forget(); // labels are taken out of the tree
     if(Tsurgeon.verbose)
       t.pennPrint(System.err);
     return t;
   }
+
+  private static final long serialVersionUID = 4565409504131702184L;
+
 }
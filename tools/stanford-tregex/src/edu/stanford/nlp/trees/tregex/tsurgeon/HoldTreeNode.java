@@ -16,12 +16,15 @@ class HoldTreeNode extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    return subTree.copy(this).tree;
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    return subTree.copy(context).tree;
   }
 
   @Override
   public String toString() {
     return subTree.toString();
   }
+
+  private static final long serialVersionUID = 4474253009574806996L;
+
 }
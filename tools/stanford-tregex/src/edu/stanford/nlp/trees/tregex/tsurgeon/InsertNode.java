@@ -16,21 +16,20 @@ class InsertNode extends TsurgeonPattern {
     this.l = l;
   }
 
-  @Override
-  protected void setRoot(TsurgeonPatternRoot root) {
-    super.setRoot(root);
-    l.setRoot(root);
-  }
-
   public InsertNode(AuxiliaryTree t, TreeLocation l) {
     this(new HoldTreeNode(t),l);
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    Tree nodeToInsert = children[0].evaluate(t,m);
-    Pair<Tree,Integer> position = l.evaluate(t,m);
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    Tree nodeToInsert = children[0].evaluate(t, m, context);
+    Pair<Tree,Integer> position = l.evaluate(t, m, context);
     position.first().insertDtr(nodeToInsert,position.second());
+    context.markChanged(position.first());
+    if (children[0] instanceof FetchNode) {
+      // the inserted node may now be in the tree twice
+      context.markUntracked();
+    }
     return t;
   }
 
@@ -39,5 +38,6 @@ class InsertNode extends TsurgeonPattern {
     return label + '(' + children[0] + ',' + l + ')';
   }
 
+  private static final long serialVersionUID = -184387244244560552L;
 
 }
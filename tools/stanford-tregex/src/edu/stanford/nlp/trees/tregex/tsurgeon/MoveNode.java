@@ -17,18 +17,14 @@ class MoveNode extends TsurgeonPattern {
   }
 
   @Override
-  protected void setRoot(TsurgeonPatternRoot root) {
-    super.setRoot(root);
-    l.setRoot(root);
-  }
-
-  @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    Tree nodeToMove = children[0].evaluate(t,m);
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    Tree nodeToMove = children[0].evaluate(t, m, context);
     Tree oldParent = nodeToMove.parent(t);
     oldParent.removeChild(Trees.objectEqualityIndexOf(oldParent,nodeToMove));
-    Pair<Tree,Integer> position = l.evaluate(t,m);
+    Pair<Tree,Integer> position = l.evaluate(t, m, context);
     position.first().insertDtr(nodeToMove,position.second());
+    context.markChanged(oldParent);
+    context.markChanged(position.first());
     return t;
   }
 
@@ -37,5 +33,6 @@ class MoveNode extends TsurgeonPattern {
     return label + "(" + children[0] + " " + l + ")"; 
   }
 
+  private static final long serialVersionUID = -8403951362222436224L;
 
 }
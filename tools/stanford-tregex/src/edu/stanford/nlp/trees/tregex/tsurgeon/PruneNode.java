@@ -19,23 +19,28 @@ class PruneNode extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
     boolean prunedWholeTree = false;
     for(TsurgeonPattern child : children) {
-      final Tree nodeToPrune = child.evaluate(t,m);
-      if(pruneHelper(t,nodeToPrune) == null)
+      final Tree nodeToPrune = child.evaluate(t, m, context);
+      if(pruneHelper(t,nodeToPrune,context) == null)
         prunedWholeTree = true;
     }
     return prunedWholeTree ? null : t;
   }
 
-  private static Tree pruneHelper(Tree root, Tree nodeToPrune) {
+  private static Tree pruneHelper(Tree root, Tree nodeToPrune, TsurgeonContext context) {
     if(nodeToPrune==root)
       return null;
     Tree parent = nodeToPrune.parent(root);
     parent.removeChild(Trees.objectEqualityIndexOf(parent,nodeToPrune));
+    context.markChanged(parent);
+    context.coindexer.forget(); // labels are taken out of the tree
     if(parent.children().length==0)
-      return pruneHelper(root,parent);
+      return pruneHelper(root,parent,context);
     return root;
   }
+
+  private static final long serialVersionUID = -1048982642031805259L;
+
 }
@@ -129,8 +129,9 @@ class RelabelNode extends TsurgeonPattern {
 
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher tm) {
-    Tree nodeToRelabel = children[0].evaluate(t, tm);
+  Tree evaluate(Tree t, TregexMatcher tm, TsurgeonContext context) {
+    Tree nodeToRelabel = children[0].evaluate(t, tm, context);
+    String oldLabel = nodeToRelabel.label().value();
     switch (mode) {
     case FIXED: {
       nodeToRelabel.label().setValue(newLabel);
@@ -156,6 +157,8 @@ class RelabelNode extends TsurgeonPattern {
     default:
       throw new AssertionError("Unsupported relabel mode " + mode);
     }
+    context.coindexer.labelChanged(oldLabel, nodeToRelabel.label().value());
+    context.markChanged(nodeToRelabel);
     return t;
   }
 
@@ -172,4 +175,6 @@ class RelabelNode extends TsurgeonPattern {
     }
   }
 
+  private static final long serialVersionUID = 9145917791056950163L;
+
 }
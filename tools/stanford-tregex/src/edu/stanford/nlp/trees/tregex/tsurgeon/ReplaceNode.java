@@ -17,15 +17,24 @@ class ReplaceNode extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    Tree oldNode = children[0].evaluate(t,m);
-    Tree newNode = children[1].evaluate(t,m);
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    Tree oldNode = children[0].evaluate(t, m, context);
+    Tree newNode = children[1].evaluate(t, m, context);
+    context.coindexer.forget(); // labels are taken out of the tree
     if(oldNode==t)
       return newNode;
     Tree parent = oldNode.parent(t);
     int i = parent.indexOf(oldNode);
     parent.removeChild(i);
     parent.insertDtr(newNode,i);
+    context.markChanged(parent);
+    if (children[1] instanceof FetchNode) {
+      // the new node may now be in the tree twice
+      context.markUntracked();
+    }
     return t;
   }
+
+  private static final long serialVersionUID = -5720039782934452179L;
+
 }
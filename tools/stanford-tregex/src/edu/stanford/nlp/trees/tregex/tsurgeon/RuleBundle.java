@@ -0,0 +1,294 @@
+package edu.stanford.nlp.trees.tregex.tsurgeon;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.trees.tregex.Macros;
+import edu.stanford.nlp.trees.tregex.TregexPattern;
+import edu.stanford.nlp.trees.tregex.TregexPatternCompiler;
+import edu.stanford.nlp.util.Pair;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A file holding the compiled tregex/tsurgeon pattern pairs of a list of
+ * operation files, in order, so that a large set of rules can be loaded
+ * without reading and parsing every script again.  Make one with
+ * <code>Tsurgeon -compileRules bundle.bin</code> (or
+ * <code>compile-rules.sh</code>) and use it with <code>Tsurgeon -rules
+ * bundle.bin</code>.
+ * <p>
+ * The bundle records the operation files, lexicon and macro file it was
+ * compiled from, with a checksum of each, and a checksum of the code that
+ * compiled it: the jar it was run from, or all of the class files if it
+ * was run from a directory of them.  If any of the files has changed since,
+ * the code is different, or the compiled rules can't be read, {@link #load}
+ * compiles the rules from those files again and rewrites the bundle.  The
+ * code is compared as well as the files because the serialized patterns
+ * don't change their serialVersionUIDs when fields are added to them, so
+ * rules compiled by older code could otherwise be read without error but
+ * with those fields missing.
+ */
+public class RuleBundle {
+
+  private static final String MAGIC = "tsurgeon-rule-bundle";
+  /** Changed whenever what {@link #write} writes before the compiled rules changes */
+  private static final int VERSION = 2;
+
+  private final String encoding;
+  private final String lexiconFile;
+  private final String macroFile;
+  private final List<String> operationFiles;
+  private final List<Pair<TregexPattern,TsurgeonPattern>> operations;
+
+  private RuleBundle(String encoding, String lexiconFile, String macroFile, List<String> operationFiles,
+                     List<Pair<TregexPattern,TsurgeonPattern>> operations) {
+    this.encoding = encoding;
+    this.lexiconFile = lexiconFile;
+    this.macroFile = macroFile;
+    this.operationFiles = operationFiles;
+    this.operations = operations;
+  }
+
+  /**
+   * Compiles the operations of the given files, in order.
+   *
+   * @param operationFiles The tsurgeon operation files
+   * @param lexiconFile A {@link TemplateLexicon} for the generalized
+   *     templates among them, or <code>null</code>
+   * @param macroFile A file of tregex macros (see {@link Macros}), or
+   *     <code>null</code>
+   * @param encoding The character encoding of all of the files
+   * @return The compiled rules, ready to {@link #write}
+   * @throws IOException If one of the files can't be read
+   */
+  public static RuleBundle compile(List<String> operationFiles, String lexiconFile, String macroFile,
+                                   String encoding) throws IOException {
+    TregexPatternCompiler compiler = new TregexPatternCompiler();
+    Macros.addAllMacros(compiler, macroFile, encoding);
+    TemplateLexicon lexicon = (lexiconFile == null ? null : TemplateLexicon.load(lexiconFile, encoding));
+    List<Pair<TregexPattern,TsurgeonPattern>> operations = new ArrayList<Pair<TregexPattern,TsurgeonPattern>>();
+    List<String> files = new ArrayList<String>();
+    operations.addAll(Tsurgeon.getOperationsFromFiles(operationFiles, encoding, compiler, lexicon));
+    for (String file : operationFiles) {
+      files.add(new File(file).getAbsolutePath());
+    }
+    return new RuleBundle(encoding, absolutePath(lexiconFile), absolutePath(macroFile),
+                          Collections.unmodifiableList(files), Collections.unmodifiableList(operations));
+  }
+
+  private static String absolutePath(String file) {
+    return (file == null || file.equals("") ? null : new File(file).getAbsolutePath());
+  }
+
+  /**
+   * The compiled pattern pairs, in the order of the files they came from.
+   */
+  public List<Pair<TregexPattern,TsurgeonPattern>> operations() {
+    return operations;
+  }
+
+  /** All of the files the rules were compiled from */
+  private List<String> sourceFiles() {
+    List<String> sources = new ArrayList<String>(operationFiles);
+    if (lexiconFile != null) {
+      sources.add(lexiconFile);
+    }
+    if (macroFile != null) {
+      sources.add(macroFile);
+    }
+    return sources;
+  }
+
+  /**
+   * Writes the bundle to a file.
+   *
+   * @throws IOException If the file can't be written
+   */
+  public void write(String filename) throws IOException {
+    ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+    try {
+      out.writeUTF(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(encoding);
+      out.writeUTF(lexiconFile == null ? "" : lexiconFile);
+      out.writeUTF(macroFile == null ? "" : macroFile);
+      out.writeInt(operationFiles.size());
+      for (String file : operationFiles) {
+        out.writeUTF(file);
+      }
+      out.writeLong(codeChecksum());
+      for (String file : sourceFiles()) {
+        out.writeLong(checksum(file));
+      }
+      out.writeObject(new ArrayList<Pair<TregexPattern,TsurgeonPattern>>(operations));
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads the rules from a bundle written by {@link #write}.  If any of
+   * the files they were compiled from has changed since, the bundle was
+   * written by different code, or the compiled rules can't be read, the
+   * rules are compiled again, and the bundle is rewritten if possible.
+   *
+   * @param filename The bundle file
+   * @return The rules, up to date with the files they are compiled from
+   * @throws IOException If the bundle or one of its source files can't
+   *     be read
+   */
+  public static RuleBundle load(String filename) throws IOException {
+    ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(filename)));
+    RuleBundle bundle;
+    boolean stale = false;
+    try {
+      if ( ! MAGIC.equals(in.readUTF())) {
+        throw new IOException("Not a rule bundle: " + filename + "; compile it with -compileRules");
+      }
+      // every version so far starts with the files the rules were compiled
+      // from, so a bundle of another version can still be compiled again
+      int version = in.readInt();
+      String encoding = in.readUTF();
+      String lexiconFile = absolutePath(in.readUTF());
+      String macroFile = absolutePath(in.readUTF());
+      int numFiles = in.readInt();
+      List<String> operationFiles = new ArrayList<String>(numFiles);
+      for (int i = 0; i < numFiles; i++) {
+        operationFiles.add(in.readUTF());
+      }
+      bundle = new RuleBundle(encoding, lexiconFile, macroFile, Collections.unmodifiableList(operationFiles), null);
+      if (version != VERSION || in.readLong() != codeChecksum()) {
+        stale = true;
+      } else {
+        for (String file : bundle.sourceFiles()) {
+          if (in.readLong() != checksum(file)) {
+            stale = true;
+          }
+        }
+      }
+      if ( ! stale) {
+        try {
+          List<?> read = (List<?>) in.readObject();
+          List<Pair<TregexPattern,TsurgeonPattern>> operations = new ArrayList<Pair<TregexPattern,TsurgeonPattern>>(read.size());
+          for (Object o : read) {
+            Pair<?,?> pair = (Pair<?,?>) o;
+            operations.add(new Pair<TregexPattern,TsurgeonPattern>((TregexPattern) pair.first(), (TsurgeonPattern) pair.second()));
+          }
+          bundle = new RuleBundle(encoding, lexiconFile, macroFile, bundle.operationFiles,
+                                  Collections.unmodifiableList(operations));
+        } catch (ClassNotFoundException e) {
+          stale = true;
+        } catch (ObjectStreamException e) {
+          // InvalidClassException, StreamCorruptedException and the like
+          stale = true;
+        } catch (EOFException e) {
+          stale = true;
+        } catch (ClassCastException e) {
+          stale = true;
+        }
+      }
+    } finally {
+      in.close();
+    }
+    if ( ! stale) {
+      return bundle;
+    }
+
+    System.err.println("Rule bundle " + filename + " is out of date; compiling its rules again");
+    bundle = compile(bundle.operationFiles, bundle.lexiconFile, bundle.macroFile, bundle.encoding);
+    try {
+      bundle.write(filename);
+    } catch (IOException e) {
+      System.err.println("Could not rewrite rule bundle " + filename + ": " + e);
+    }
+    return bundle;
+  }
+
+  /** The checksum of the running code, worked out the first time it is needed */
+  private static long codeChecksum; // = 0;
+
+  /**
+   * A CRC32 checksum of the code the rules are compiled by: the jar this
+   * class was loaded from, or the class files under the directory it was
+   * loaded from.  It is 0 if the code can't be found, in which case only
+   * the source files are checked.
+   */
+  private static synchronized long codeChecksum() {
+    if (codeChecksum != 0) {
+      return codeChecksum;
+    }
+    try {
+      CodeSource source = RuleBundle.class.getProtectionDomain().getCodeSource();
+      File location = (source == null || source.getLocation() == null ? null : new File(source.getLocation().toURI()));
+      if (location == null || ! location.exists()) {
+        return 0;
+      }
+      CRC32 crc = new CRC32();
+      if (location.isDirectory()) {
+        List<File> classFiles = new ArrayList<File>();
+        addClassFiles(location, classFiles);
+        for (File file : classFiles) {
+          crc.update(file.getPath().getBytes("UTF-8"));
+          crc.update(Long.toString(checksum(file.getPath())).getBytes("UTF-8"));
+        }
+      } else {
+        crc.update(Long.toString(checksum(location.getPath())).getBytes("UTF-8"));
+      }
+      codeChecksum = crc.getValue();
+    } catch (URISyntaxException e) {
+      return 0;
+    } catch (IllegalArgumentException e) {
+      // not a file: URL
+      return 0;
+    } catch (SecurityException e) {
+      return 0;
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+    return codeChecksum;
+  }
+
+  /** Adds the class files under a directory to the list, in a fixed order */
+  private static void addClassFiles(File dir, List<File> classFiles) {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files);
+    for (File file : files) {
+      if (file.isDirectory()) {
+        addClassFiles(file, classFiles);
+      } else if (file.getName().endsWith(".class")) {
+        classFiles.add(file);
+      }
+    }
+  }
+
+  /** A CRC32 checksum of the contents of a file, or -1 if it can't be read */
+  private static long checksum(String filename) {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[8192];
+    try {
+      InputStream in = new FileInputStream(filename);
+      try {
+        for (int n; (n = in.read(buffer)) > 0; ) {
+          crc.update(buffer, 0, n);
+        }
+      } finally {
+        in.close();
+      }
+    } catch (FileNotFoundException e) {
+      return -1;
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+    return crc.getValue();
+  }
+
+}
@@ -0,0 +1,159 @@
+package edu.stanford.nlp.trees.tregex.tsurgeon;
+
+import edu.stanford.nlp.trees.tregex.TregexPattern;
+import edu.stanford.nlp.trees.tregex.TregexPatternCompiler;
+import edu.stanford.nlp.util.Pair;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A lexicon of the words to fill generalized Tsurgeon templates with.  A
+ * generalized template is an ordinary Tsurgeon script whose patterns and
+ * operations contain slots such as <code>$verb</code> and
+ * <code>$label</code>.  Each line of the lexicon binds the slots for one
+ * word and names the templates it should be used with:
+ * <pre>
+ * verb:require, label:Require, V3-passive-basic, V3-I3-basic
+ * verb:enjoin, prep:from, label:NotPermit, T1-Prep-monotransitive-VBG
+ * </pre>
+ * The first slot on a line is the word the line is about.  Template names
+ * are script file names without the <code>.txt</code> extension.  If a
+ * word is listed for the same template more than once, the last line wins.
+ * <p>
+ * {@link #instantiate} fills in a copy of a template for each of its words,
+ * as <code>instantiate-templates.sh</code> does, without writing the copies
+ * to files.  The copies are run in the order that script's files,
+ * <code>word-template.txt</code>, would be, so each word is run through all
+ * of its templates before the next word is, and the operations that add
+ * to the same node do so in the same order as before.  A copy whose word
+ * isn't in a tree is skipped by its required labels without being
+ * matched, so having a pattern for each word costs little.
+ */
+public class TemplateLexicon {
+
+  /** For each template, the slots of each word listed for it */
+  private final Map<String, Map<String, Map<String, String>>> templates = new HashMap<String, Map<String, Map<String, String>>>();
+
+  private TemplateLexicon() {}
+
+  /**
+   * Reads a lexicon file.
+   *
+   * @param filename The lexicon file
+   * @param encoding The character encoding of the file
+   * @return The lexicon
+   * @throws IOException If the file can't be read
+   */
+  public static TemplateLexicon load(String filename, String encoding) throws IOException {
+    TemplateLexicon lexicon = new TemplateLexicon();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(filename), encoding));
+    for (String line; (line = reader.readLine()) != null; ) {
+      lexicon.addLine(line);
+    }
+    reader.close();
+    return lexicon;
+  }
+
+  private void addLine(String line) {
+    Map<String, String> bindings = new LinkedHashMap<String, String>();
+    String word = null;
+    List<String> templateNames = new ArrayList<String>();
+    for (String field : line.split(",")) {
+      field = field.trim();
+      if (field.length() == 0) {
+        continue;
+      }
+      int colon = field.lastIndexOf(':');
+      if (colon >= 0) {
+        String value = field.substring(colon + 1).trim();
+        if (word == null) {
+          word = value;
+        }
+        bindings.put(field.substring(0, colon).trim(), value);
+      } else {
+        templateNames.add(field);
+      }
+    }
+    if (word == null) {
+      return;
+    }
+    for (String template : templateNames) {
+      Map<String, Map<String, String>> words = templates.get(template);
+      if (words == null) {
+        words = new HashMap<String, Map<String, String>>();
+        templates.put(template, words);
+      }
+      words.put(word, bindings);
+    }
+  }
+
+  /**
+   * Whether any words are listed for the named template.
+   */
+  public boolean hasTemplate(String templateName) {
+    return templates.containsKey(templateName);
+  }
+
+  /**
+   * Compiles the copies of some templates for all of the words listed for
+   * them.  The copies are in the order of their names,
+   * <code>word-template</code>, and the patterns of each are in the order
+   * of its template.
+   *
+   * @param scripts For each template, by name, its tregex patterns, with
+   *     slots, each with its tsurgeon operations, one per string, with slots
+   * @param compiler The compiler for the tregex patterns
+   * @return The compiled pattern pairs
+   */
+  public List<Pair<TregexPattern, TsurgeonPattern>> instantiate(Map<String, List<Pair<String, List<String>>>> scripts,
+                                                                TregexPatternCompiler compiler) {
+    // the names instantiate-templates.sh gives the copies, in the order the shell lists them
+    SortedMap<String, Pair<String, Map<String, String>>> copies = new TreeMap<String, Pair<String, Map<String, String>>>();
+    for (String template : scripts.keySet()) {
+      Map<String, Map<String, String>> words = templates.get(template);
+      if (words == null) {
+        continue;
+      }
+      for (Map.Entry<String, Map<String, String>> word : words.entrySet()) {
+        copies.put(word.getKey() + '-' + template, new Pair<String, Map<String, String>>(template, word.getValue()));
+      }
+    }
+
+    List<Pair<TregexPattern, TsurgeonPattern>> result = new ArrayList<Pair<TregexPattern, TsurgeonPattern>>();
+    for (Pair<String, Map<String, String>> copy : copies.values()) {
+      Map<String, String> bindings = copy.second();
+      for (Pair<String, List<String>> script : scripts.get(copy.first())) {
+        TregexPattern matchPattern = compiler.compile(fillSlots(script.first(), bindings));
+        List<TsurgeonPattern> operations = new ArrayList<TsurgeonPattern>();
+        for (String operation : script.second()) {
+          operations.add(Tsurgeon.parseOperation(fillSlots(operation, bindings)));
+        }
+        result.add(new Pair<TregexPattern, TsurgeonPattern>(matchPattern, Tsurgeon.collectOperations(operations)));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Replaces each slot in <code>s</code> with its value, in the order the
+   * slots were given on the lexicon line, as instantiate-templates.sh does
+   * with sed.
+   */
+  private static String fillSlots(String s, Map<String, String> bindings) {
+    for (Map.Entry<String, String> binding : bindings.entrySet()) {
+      s = s.replace('$' + binding.getKey(), binding.getValue());
+    }
+    return s;
+  }
+
+}
@@ -4,13 +4,14 @@ import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.tregex.TregexMatcher;
 import edu.stanford.nlp.util.Pair;
 
+import java.io.Serializable;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
 /**
  * @author Roger Levy
  */
-class TreeLocation {
+class TreeLocation implements Serializable {
 
   private final String relation;
 
@@ -21,16 +22,12 @@ class TreeLocation {
     this.p = p;
   }
 
-  void setRoot(TsurgeonPatternRoot root) {
-    p.setRoot(root);
-  }
-
   private static final Pattern daughterPattern = Pattern.compile(">-?([0-9]+)");
 
-  Pair<Tree,Integer> evaluate(Tree t, TregexMatcher tm) {
+  Pair<Tree,Integer> evaluate(Tree t, TregexMatcher tm, TsurgeonContext context) {
     int newIndex = -1;
     Tree parent = null;
-    Tree relativeNode = p.evaluate(t,tm);
+    Tree relativeNode = p.evaluate(t, tm, context);
     Matcher m = daughterPattern.matcher(relation);
     if (m.matches()) {
       newIndex = Integer.parseInt(m.group(1))-1;
@@ -59,4 +56,6 @@ class TreeLocation {
     return relation + " " + p;
   }
 
+  private static final long serialVersionUID = 6095202430559199043L;
+
 }
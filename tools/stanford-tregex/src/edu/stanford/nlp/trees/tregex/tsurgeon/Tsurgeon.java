@@ -28,13 +28,19 @@
 
 package edu.stanford.nlp.trees.tregex.tsurgeon;
 
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.SymbolLabel;
 import edu.stanford.nlp.trees.*;
 import edu.stanford.nlp.trees.tregex.Macros;
 import edu.stanford.nlp.trees.tregex.TregexPattern;
 import edu.stanford.nlp.trees.tregex.TregexPatternCompiler;
 import edu.stanford.nlp.trees.tregex.TregexMatcher;
+import edu.stanford.nlp.util.IdentityHashSet;
+import edu.stanford.nlp.util.MutableInteger;
 import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
+import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
 import java.util.*;
 import java.util.regex.Pattern;
@@ -91,6 +97,10 @@ import java.io.*;
  * surgery patterns into one TsurgeonPattern, and then to call processPatternOnTrees.
  * Either of these latter methods is much faster.
  * <p>
+ * To apply a list of pattern pairs from several threads at once, use
+ * {@link #processPatternsOnTreeWithResult}, which keeps no static or
+ * per-pattern state and reports what matched in a {@link TsurgeonResult}.
+ * <p>
  * For more information on using Tsurgeon from the command line,
  * see the {@link #main} method and the package Javadoc.
  *
@@ -108,7 +118,7 @@ public class Tsurgeon {
 
   private Tsurgeon() {} // not an instantiable class
 
-  /** Usage: java edu.stanford.nlp.trees.tregex.tsurgeon.Tsurgeon [-s] -treeFile file-with-trees [-po matching-pattern operation] operation-file-1 operation-file-2 ... operation-file-n
+  /** Usage: java edu.stanford.nlp.trees.tregex.tsurgeon.Tsurgeon [-s] [-threads N] [-prefetch N] [-lexicon file] [-rules bundle] [-internLabels] [-flushEachTree] [-outputCompression gzip|bzip2] [-profile file [-profileSample N]] [-stdin | -port N] -treeFile file-with-trees [-po matching-pattern operation] operation-file-1 operation-file-2 ... operation-file-n
    *
    * <h4>Arguments:</h4>
    *
@@ -145,6 +155,31 @@ public class Tsurgeon {
    *   <li><code>-m</code> For every tree that had a matching pattern, print "before" (prepended as "Operated on:") and "after" (prepended as "Result:").  Unoperated trees just pass through the transducer as usual.
    *   <li><code>-encoding X</code> Uses character set X for input and output of trees.
    *   <li><code>-macros &#60;filename&#62;</code> A file of macros to use on the tregex pattern.  Macros should be one per line, with original and replacement separated by tabs.
+   *   <li><code>-threads N</code> Process trees on N worker threads, all sharing the one set of compiled patterns.  Trees are still printed in input order.
+   *   <li><code>-prefetch N</code> When <code>-treeFile</code> is a directory of many files, read and parse the next N of them in the background
+   *   while the trees before them are transformed.  See {@link DiskTreebank#setPrefetchFiles}.
+   *   <li><code>-lexicon &#60;filename&#62;</code> A lexicon of words for generalized templates.  Any operation file that the lexicon lists words for
+   *   is treated as a template with slots like <code>$verb</code> and <code>$label</code>, and is filled in for each of its words, as by
+   *   <code>instantiate-templates.sh</code>, without writing the copies to files.  See {@link TemplateLexicon}.
+   *   <li><code>-compileRules &#60;filename&#62;</code> Compile the operation files (along with any <code>-lexicon</code> and <code>-macros</code>) into a rule bundle
+   *   with this name, and exit without reading any trees.  See {@link RuleBundle}.
+   *   <li><code>-rules &#60;filename&#62;</code> Use the operations of a rule bundle made with <code>-compileRules</code>, before those of any operation files given.
+   *   If the files the bundle was compiled from have changed, it is compiled again first.
+   *   <li><code>-internLabels</code> Read trees with {@link SymbolLabel}s, which keep one copy of each distinct label and let patterns compare
+   *   labels by integer id.  Every distinct label is kept for as long as the program runs, so this can't be used with <code>-stdin</code>
+   *   or <code>-port</code>, where the labels of a long-running server would pile up without end.
+   *   <li><code>-flushEachTree</code> Flush the output after each tree, for watching it as it is made.  By default output is only written
+   *   when a large buffer fills, which is faster.
+   *   <li><code>-outputCompression gzip|bzip2</code> Compress the trees printed to standard output.  (Compressed tree files are always
+   *   read, decompressing them as they go; they are recognized by their first bytes, and in directories by the extension <code>.gz</code> or <code>.bz2</code>.)
+   *   <li><code>-profile &#60;filename&#62;</code> Time each pattern pair: its searches, the nodes they tried, its matches and the time spent
+   *   applying them, and its restarts on changed trees.  The most costly pairs are listed on standard error at the end, and all of them are
+   *   written to the file, as JSON if its name ends in <code>.json</code> and otherwise as CSV.  See {@link TsurgeonProfile}.
+   *   <li><code>-profileSample N</code> With <code>-profile</code>, only profile one tree in N, which leaves the others running at full speed.
+   *   <li><code>-stdin</code> Rather than transforming the trees of a file, read requests of one or more trees, one request per line, from standard input,
+   *   and answer each on standard output.  See {@link TsurgeonServer} for the protocol.  Requests are processed on <code>-threads</code> threads,
+   *   by default one per processor.
+   *   <li><code>-port N</code> Like <code>-stdin</code>, but accept connections on port N of localhost, each with its own stream of requests.
    * </ul>
    *
    * <h4>Legal operation syntax:</h4>
@@ -220,7 +255,7 @@ public class Tsurgeon {
     String encoding = "UTF-8";
     String encodingOption = "-encoding";
     if(args.length==0) {
-      System.err.println("Usage: java edu.stanford.nlp.trees.tregex.tsurgeon.Tsurgeon [-s] -treeFile <file-with-trees> [-po <matching-pattern> <operation>] <operation-file-1> <operation-file-2> ... <operation-file-n>");
+      System.err.println("Usage: java edu.stanford.nlp.trees.tregex.tsurgeon.Tsurgeon [-s] [-threads N] [-prefetch N] [-lexicon <file>] [-rules <bundle>] [-internLabels] [-flushEachTree] [-outputCompression gzip|bzip2] [-profile <file> [-profileSample <N>]] [-stdin | -port <N>] -treeFile <file-with-trees> [-po <matching-pattern> <operation>] <operation-file-1> <operation-file-2> ... <operation-file-n>");
       System.exit(0);
     }
     String treePrintFormats;
@@ -231,12 +266,37 @@ public class Tsurgeon {
     String treeFileOption = "-treeFile";
     String macroOption = "-macros";
     String macroFilename = "";
+    String threadsOption = "-threads";
+    int nThreads = 1;
+    String prefetchOption = "-prefetch";
+    String lexiconOption = "-lexicon";
+    String rulesOption = "-rules";
+    String compileRulesOption = "-compileRules";
+    String portOption = "-port";
+    String stdinOption = "-stdin";
+    String internLabelsOption = "-internLabels";
+    String flushEachTreeOption = "-flushEachTree";
+    String outputCompressionOption = "-outputCompression";
+    String profileOption = "-profile";
+    String profileSampleOption = "-profileSample";
     Map<String,Integer> flagMap = new HashMap<String,Integer>();
     flagMap.put(patternOperationOption,2);
     flagMap.put(treeFileOption,1);
     flagMap.put(singleLineOption,0);
     flagMap.put(encodingOption,1);
     flagMap.put(macroOption, 1);
+    flagMap.put(threadsOption, 1);
+    flagMap.put(prefetchOption, 1);
+    flagMap.put(lexiconOption, 1);
+    flagMap.put(rulesOption, 1);
+    flagMap.put(compileRulesOption, 1);
+    flagMap.put(portOption, 1);
+    flagMap.put(stdinOption, 0);
+    flagMap.put(internLabelsOption, 0);
+    flagMap.put(flushEachTreeOption, 0);
+    flagMap.put(outputCompressionOption, 1);
+    flagMap.put(profileOption, 1);
+    flagMap.put(profileSampleOption, 1);
     Map<String,String[]> argsMap = StringUtils.argsToMap(args,flagMap);
     args = argsMap.get(null);
 
@@ -244,11 +304,31 @@ public class Tsurgeon {
     if(argsMap.containsKey(singleLineOption))   treePrintFormats = "oneline,";   else treePrintFormats = "penn,";
     if(argsMap.containsKey(encodingOption)) encoding = argsMap.get(encodingOption)[0];
     if(argsMap.containsKey(macroOption)) macroFilename = argsMap.get(macroOption)[0];
+    if(argsMap.containsKey(threadsOption)) nThreads = Integer.parseInt(argsMap.get(threadsOption)[0]);
+
+    if (argsMap.containsKey(compileRulesOption)) {
+      String lexiconFilename = (argsMap.containsKey(lexiconOption) ? argsMap.get(lexiconOption)[0] : null);
+      RuleBundle.compile(Arrays.asList(args), lexiconFilename, macroFilename, encoding).write(argsMap.get(compileRulesOption)[0]);
+      return;
+    }
 
     TreePrint tp = new TreePrint(treePrintFormats, new PennTreebankLanguagePack());
-    PrintWriter pwOut = new PrintWriter(new OutputStreamWriter(System.out,encoding), true);
+    TreeWriter.FlushPolicy flushPolicy = (argsMap.containsKey(flushEachTreeOption) ? TreeWriter.FlushPolicy.EACH_TREE : TreeWriter.FlushPolicy.WHEN_FULL);
+    boolean compressOutput = argsMap.containsKey(outputCompressionOption);
+    OutputStream out = (compressOutput ? IOUtils.getCompressingOutputStream(System.out, argsMap.get(outputCompressionOption)[0]) : System.out);
+    PrintWriter pwOut = (TreeWriter.handles(treePrintFormats) ?
+                         new TreeWriter(out, encoding, treePrintFormats, flushPolicy) :
+                         new PrintWriter(new OutputStreamWriter(out,encoding), true));
 
-    Treebank trees = new DiskTreebank(new TregexPattern.TRegexTreeReaderFactory(), encoding);
+    if (argsMap.containsKey(internLabelsOption) && (argsMap.containsKey(portOption) || argsMap.containsKey(stdinOption))) {
+      System.err.println("-internLabels can't be used with -stdin or -port: the labels of every request would be kept for as long as the server runs");
+      return;
+    }
+    TreeFactory tf = (argsMap.containsKey(internLabelsOption) ? new ParentedTreeFactory(SymbolLabel.factory()) : new ParentedTreeFactory());
+    DiskTreebank trees = new DiskTreebank(new TregexPattern.TRegexTreeReaderFactory(tf), encoding);
+    if (argsMap.containsKey(prefetchOption)) {
+      trees.setPrefetchFiles(Integer.parseInt(argsMap.get(prefetchOption)[0]));
+    }
     if (argsMap.containsKey(treeFileOption)) {
       trees.loadPath(argsMap.get(treeFileOption)[0]);
     }
@@ -256,37 +336,113 @@ public class Tsurgeon {
 
     TregexPatternCompiler compiler = new TregexPatternCompiler();
     Macros.addAllMacros(compiler, macroFilename, encoding);
+    TemplateLexicon lexicon = null;
+    if (argsMap.containsKey(lexiconOption)) {
+      lexicon = TemplateLexicon.load(argsMap.get(lexiconOption)[0], encoding);
+    }
+    if (argsMap.containsKey(rulesOption)) {
+      ops.addAll(RuleBundle.load(argsMap.get(rulesOption)[0]).operations());
+    }
     if (argsMap.containsKey(patternOperationOption)) {
       TregexPattern matchPattern = compiler.compile(argsMap.get(patternOperationOption)[0]);
       TsurgeonPattern p = parseOperation(argsMap.get(patternOperationOption)[1]);
       ops.add(new Pair<TregexPattern,TsurgeonPattern>(matchPattern,p));
     } else {
-      for (String arg : args) {
-        List<Pair<TregexPattern,TsurgeonPattern>> pairs = getOperationsFromFile(arg, encoding, compiler);
-        for (Pair<TregexPattern,TsurgeonPattern> pair : pairs) {
-          if (verbose) {
-            System.err.println(pair.second());
-          }
-          ops.add(pair);
+      List<Pair<TregexPattern,TsurgeonPattern>> pairs = getOperationsFromFiles(Arrays.asList(args), encoding, compiler, lexicon);
+      for (Pair<TregexPattern,TsurgeonPattern> pair : pairs) {
+        if (verbose) {
+          System.err.println(pair.second());
         }
+        ops.add(pair);
+      }
+    }
+
+    boolean printMatched = argsMap.containsKey(matchedOption);
+    if (argsMap.containsKey(portOption) || argsMap.containsKey(stdinOption)) {
+      int serverThreads = (argsMap.containsKey(threadsOption) ? nThreads : Runtime.getRuntime().availableProcessors());
+      TsurgeonServer server = new TsurgeonServer(ops, tf, treePrintFormats, printMatched, encoding, serverThreads);
+      if (argsMap.containsKey(portOption)) {
+        server.listen(Integer.parseInt(argsMap.get(portOption)[0]));
+      } else {
+        server.serve(System.in, System.out);
+        server.shutdown();
       }
+      return;
     }
 
-    for (Tree t : trees ) {
-      Tree original = t.deepCopy();
-      Tree result = processPatternsOnTree(ops, t);
-      if (argsMap.containsKey(matchedOption) && matchedOnTree) {
-        pwOut.println("Operated on: ");
-        displayTree(original,tp,pwOut);
-        pwOut.println("Result: ");
+    TsurgeonProfile profile = null;
+    if (argsMap.containsKey(profileOption)) {
+      int sampleEvery = (argsMap.containsKey(profileSampleOption) ? Integer.parseInt(argsMap.get(profileSampleOption)[0]) : 1);
+      profile = new TsurgeonProfile(ops, sampleEvery);
+    }
+    TreeProcessor processor = new TreeProcessor(ops, printMatched, profile);
+    if (nThreads > 1) {
+      MulticoreWrapper<Tree,TsurgeonResult> wrapper =
+        new MulticoreWrapper<Tree,TsurgeonResult>(nThreads, processor);
+      for (Tree t : trees) {
+        wrapper.put(t);
+        while (wrapper.peek()) {
+          displayResult(wrapper.poll(), printMatched, tp, pwOut);
+        }
+      }
+      wrapper.join();
+      while (wrapper.peek()) {
+        displayResult(wrapper.poll(), printMatched, tp, pwOut);
+      }
+    } else {
+      for (Tree t : trees ) {
+        displayResult(processor.process(t), printMatched, tp, pwOut);
       }
-      displayTree(result,tp,pwOut);
+    }
+    if (compressOutput) {
+      pwOut.close(); // to finish the compressed stream
+    } else {
+      pwOut.flush();
+    }
+    if (profile != null) {
+      profile.printReport(new PrintWriter(new OutputStreamWriter(System.err, encoding)), 25);
+      profile.write(argsMap.get(profileOption)[0]);
     }
   }
 
+  /**
+   * Applies a shared list of operations to one tree at a time, keeping a
+   * copy of each tree that is changed if <code>keepOriginal</code> is set,
+   * and adding to a profile if there is one.
+   * Safe to use from several threads at once.
+   */
+  private static class TreeProcessor implements ThreadsafeProcessor<Tree,TsurgeonResult> {
+
+    private final List<Pair<TregexPattern,TsurgeonPattern>> ops;
+    private final boolean keepOriginal;
+    private final TsurgeonProfile profile;
+
+    TreeProcessor(List<Pair<TregexPattern,TsurgeonPattern>> ops, boolean keepOriginal, TsurgeonProfile profile) {
+      this.ops = ops;
+      this.keepOriginal = keepOriginal;
+      this.profile = profile;
+    }
+
+    public TsurgeonResult process(Tree t) {
+      return processPatternsOnTreeWithResult(ops, t, keepOriginal, profile);
+    }
+
+  }
+
+  static void displayResult(TsurgeonResult result, boolean printMatched, TreePrint tp, PrintWriter pw) {
+    if (printMatched && result.matched()) {
+      pw.println("Operated on: ");
+      displayTree(result.original(),tp,pw);
+      pw.println("Result: ");
+    }
+    displayTree(result.tree(),tp,pw);
+  }
+
   private static void displayTree(Tree t, TreePrint tp, PrintWriter pw) {
     if (t==null) {
       pw.println("null");
+    } else if (pw instanceof TreeWriter) {
+      ((TreeWriter) pw).printTree(t);
     } else {
       tp.printTree(t,pw);
     }
@@ -345,6 +501,19 @@ public class Tsurgeon {
    */
   public static TsurgeonPattern getTsurgeonOperationsFromReader(BufferedReader reader) throws IOException {
     List<TsurgeonPattern> operations = new ArrayList<TsurgeonPattern>();
+    for (String thisLine : getOperationLinesFromReader(reader)) {
+      // System.err.println("Read tsurgeon op: " + thisLine);
+      operations.add(parseOperation(thisLine));
+    }
+    return collectOperations(operations);
+  }
+
+  /**
+   * Reads tsurgeon operations, one per line, up to the next blank line,
+   * without parsing them.  Comments are removed.
+   */
+  private static List<String> getOperationLinesFromReader(BufferedReader reader) throws IOException {
+    List<String> operations = new ArrayList<String>();
     for (String thisLine; (thisLine = reader.readLine()) != null; ) {
       if (emptyLinePattern.matcher(thisLine).matches()) {
         break;
@@ -353,10 +522,9 @@ public class Tsurgeon {
       if (emptyLinePattern.matcher(thisLine).matches()) {
         continue;
       }
-      // System.err.println("Read tsurgeon op: " + thisLine);
-      operations.add(parseOperation(thisLine));
+      operations.add(thisLine);
     }
-    return collectOperations(operations);
+    return operations;
   }
 
 
@@ -411,6 +579,48 @@ public class Tsurgeon {
     return operations;
   }
 
+  /**
+   * Like {@link #getOperationsFromFile(String, String, TregexPatternCompiler)}
+   * for each of the files in turn, but if the lexicon lists words for a
+   * script, the script is a generalized template, named by the file name
+   * without its directory or <code>.txt</code> extension.  The templates
+   * among the files next to one another are instantiated together by
+   * {@link TemplateLexicon#instantiate}, so that the copies for their words
+   * are run in the order that the files instantiate-templates.sh makes of
+   * them would be.
+   *
+   * @param filenames files containing the tsurgeon scripts or templates
+   * @param lexicon The lexicon for templates, or null
+   * @return The compiled pattern pairs
+   * @throws IOException If there is any I/O problem
+   */
+  public static List<Pair<TregexPattern, TsurgeonPattern>> getOperationsFromFiles(List<String> filenames, String encoding, TregexPatternCompiler compiler, TemplateLexicon lexicon) throws IOException {
+    List<Pair<TregexPattern,TsurgeonPattern>> operations = new ArrayList<Pair<TregexPattern, TsurgeonPattern>>();
+    Map<String, List<Pair<String, List<String>>>> templates = new LinkedHashMap<String, List<Pair<String, List<String>>>>();
+    for (String filename : filenames) {
+      String templateName = new File(filename).getName().replaceFirst("\\.txt$", "");
+      if (lexicon == null || ! lexicon.hasTemplate(templateName)) {
+        if ( ! templates.isEmpty()) {
+          operations.addAll(lexicon.instantiate(templates, compiler));
+          templates.clear();
+        }
+        operations.addAll(getOperationsFromFile(filename, encoding, compiler));
+        continue;
+      }
+      List<Pair<String, List<String>>> scripts = new ArrayList<Pair<String, List<String>>>();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(filename), encoding));
+      for (String patternString; ! "".equals(patternString = getPatternFromFile(reader)); ) {
+        scripts.add(new Pair<String, List<String>>(patternString, getOperationLinesFromReader(reader)));
+      }
+      reader.close();
+      templates.put(templateName, scripts);
+    }
+    if ( ! templates.isEmpty()) {
+      operations.addAll(lexicon.instantiate(templates, compiler));
+    }
+    return operations;
+  }
+
   /**
    * Applies {#processPattern} to a collection of trees.
    * @param matchPattern A {@link TregexPattern} to be matched against a {@link Tree}.
@@ -433,39 +643,356 @@ public class Tsurgeon {
    * @return t, which has been surgically modified.
    */
   public static Tree processPattern(TregexPattern matchPattern, TsurgeonPattern p, Tree t) {
-    TregexMatcher m = matchPattern.matcher(t);
-    while(m.find()) {
-      t = p.evaluate(t,m);
-      if(t==null)
-        break;
-      m = matchPattern.matcher(t);
+    return applyWhileMatching(matchPattern, p, t, new IdentityHashMap<Tree,Tree>(), new CoindexationGenerator(), null, new MutableInteger(), null);
+  }
+
+  /**
+   * Applies <code>p</code> to the first match of <code>matchPattern</code>
+   * in <code>t</code>, and then again to the first match in the changed
+   * tree, until the pattern no longer matches.
+   * <p>
+   * Rather than searching the whole tree again after each application,
+   * nodes that the pattern failed to match before the last match are
+   * skipped if the application could not have changed whether they match.
+   * That is the case when no node changed by the operations lies within
+   * the part of the tree that the pattern can see from them (see
+   * {@link TregexPattern#ancestorReach}).  Patterns that can see the whole
+   * tree, and operations that replace the root, fall back to searching the
+   * whole tree.
+   *
+   * @param parents The parents of the nodes of <code>t</code>, shared with
+   *     the other patterns run on it (see {@link TregexPattern#matcher(Tree, IdentityHashMap)});
+   *     cleared whenever <code>p</code> is applied
+   * @param coindexer The source of coindices for <code>t</code>, shared with
+   *     the other patterns run on it
+   * @param snapshot Takes a copy of <code>t</code> before it is first
+   *     changed, or null if no copy is wanted
+   * @param timesApplied Incremented each time <code>p</code> is applied
+   * @param counts Where to count the searches and time taken, or null if
+   *     the tree isn't being profiled
+   * @return The transformed tree, or null if the operations deleted it
+   */
+  private static Tree applyWhileMatching(TregexPattern matchPattern, TsurgeonPattern p, Tree t,
+                                         IdentityHashMap<Tree,Tree> parents, CoindexationGenerator coindexer,
+                                         Snapshot snapshot, MutableInteger timesApplied, TsurgeonProfile.Counts counts) {
+    long start = (counts == null ? 0 : System.nanoTime());
+    TregexMatcher m = matchPattern.matcher(t, parents);
+    boolean found = m.find();
+    if (counts != null) {
+      counts.searches++;
+      counts.nodesTried += m.nodesTried();
+      counts.findNanos += System.nanoTime() - start;
+    }
+    if ( ! found) {
+      return t;
+    }
+    int reach = matchPattern.ancestorReach();
+    List<Tree> matchPath = (reach < 0 ? null : pathTo(t, m.getMatch()));
+    while (true) {
+      PrecedingNodes preceding = (matchPath == null ? null : new PrecedingNodes(matchPath));
+      if (snapshot != null) {
+        snapshot.take(t);
+      }
+      if (counts != null) {
+        start = System.nanoTime();
+      }
+      TsurgeonContext context = new TsurgeonContext(t, coindexer);
+      Tree result = p.evaluate(t, m, context);
+      timesApplied.set(timesApplied.intValue() + 1);
+      parents.clear();
+      if (counts != null) {
+        long now = System.nanoTime();
+        counts.matches++;
+        counts.evaluateNanos += now - start;
+        start = now;
+      }
+      if (result == null) {
+        return null;
+      }
+      List<Tree> changed = context.changedNodes();
+      m = matchPattern.matcher(result, parents);
+      if (preceding == null || result != t || changed == null) {
+        found = m.find();
+        matchPath = ( ! found || reach < 0 ? null : pathTo(result, m.getMatch()));
+      } else {
+        Set<Tree> dirty = new IdentityHashSet<Tree>();
+        findDirty(result, new IdentityHashSet<Tree>(changed), dirty);
+        matchPath = new MatchSearch(m, reach, preceding, dirty).find(result);
+        found = (matchPath != null);
+      }
+      if (counts != null) {
+        counts.searches++;
+        counts.restarts++;
+        counts.nodesTried += m.nodesTried();
+        counts.findNanos += System.nanoTime() - start;
+      }
+      if ( ! found) {
+        return result;
+      }
+      t = result;
+    }
+  }
+
+  /** Adds the label of every node in <code>t</code> to <code>labels</code>. */
+  private static void addLabels(Tree t, Set<String> labels) {
+    for (Tree node : t) {
+      String value = node.value();
+      if (value != null) {
+        labels.add(value);
+      }
     }
-    return t;
+  }
+
+  /**
+   * The path of nodes from <code>t</code> down to <code>node</code>, or
+   * null if <code>node</code> is not in <code>t</code>.
+   */
+  private static List<Tree> pathTo(Tree t, Tree node) {
+    List<Tree> path = new ArrayList<Tree>();
+    return (pathTo(t, node, path) ? path : null);
+  }
+
+  private static boolean pathTo(Tree t, Tree node, List<Tree> path) {
+    path.add(t);
+    if (t == node) {
+      return true;
+    }
+    for (Tree kid : t.children()) {
+      if (pathTo(kid, node, path)) {
+        return true;
+      }
+    }
+    path.remove(path.size() - 1);
+    return false;
+  }
+
+  /**
+   * Adds to <code>dirty</code> every node at or under <code>node</code>
+   * that is in <code>unfound</code> or dominates a node that is.  Nodes
+   * are removed from <code>unfound</code> as they are found, and the search
+   * stops when there are none left.
+   *
+   * @return Whether <code>node</code> itself was added
+   */
+  private static boolean findDirty(Tree node, Set<Tree> unfound, Set<Tree> dirty) {
+    boolean isDirty = unfound.remove(node);
+    Tree[] kids = node.children();
+    for (int i = 0; i < kids.length && ! unfound.isEmpty(); i++) {
+      if (findDirty(kids[i], unfound, dirty)) {
+        isDirty = true;
+      }
+    }
+    if (isDirty) {
+      dirty.add(node);
+    }
+    return isDirty;
+  }
+
+  /**
+   * The nodes that come before a match in a preorder traversal, which are
+   * the nodes the search tried and failed to match at: the ancestors of the
+   * match, and the subtrees of their children to the left of the path to the
+   * match.  This must be built before the tree is changed.
+   */
+  private static class PrecedingNodes {
+
+    final Set<Tree> ancestors = new IdentityHashSet<Tree>();
+    final Set<Tree> subtrees = new IdentityHashSet<Tree>();
+
+    PrecedingNodes(List<Tree> matchPath) {
+      for (int i = 0, last = matchPath.size() - 1; i < last; i++) {
+        Tree ancestor = matchPath.get(i);
+        ancestors.add(ancestor);
+        for (Tree kid : ancestor.children()) {
+          if (kid == matchPath.get(i + 1)) {
+            break;
+          }
+          subtrees.add(kid);
+        }
+      }
+    }
+
+  }
+
+  /**
+   * A preorder search for the first node that a pattern matches at, in the
+   * same order as {@link TregexMatcher#find}, after an edit to the tree.
+   * Nodes that came before the last match are not tried again unless the
+   * ancestor bounding what the pattern can see from them is
+   * <code>dirty</code>, that is, was changed or dominates a changed node.
+   * Where a whole clean subtree came before the last match and is out of
+   * sight of any change, it is passed over without being visited.
+   */
+  private static class MatchSearch {
+
+    private final TregexMatcher matcher;
+    private final int reach;
+    private final PrecedingNodes preceding;
+    private final Set<Tree> dirty;
+    private final List<Tree> path = new ArrayList<Tree>();
+
+    MatchSearch(TregexMatcher matcher, int reach, PrecedingNodes preceding, Set<Tree> dirty) {
+      this.matcher = matcher;
+      this.reach = reach;
+      this.preceding = preceding;
+      this.dirty = dirty;
+    }
+
+    /**
+     * Returns the path from <code>t</code> to the first node that matches,
+     * or null if none does.
+     */
+    List<Tree> find(Tree t) {
+      return (find(t, false) ? path : null);
+    }
+
+    private boolean find(Tree node, boolean inPrecedingSubtree) {
+      int depth = path.size();
+      path.add(node);
+      // a clean node's subtree is the same as it was before the edit
+      boolean subtreePreceded = ! dirty.contains(node) &&
+        (inPrecedingSubtree || preceding.subtrees.contains(node));
+      boolean preceded = subtreePreceded || preceding.ancestors.contains(node);
+      if (preceded && ! dirty.contains(path.get(Math.max(0, depth - reach)))) {
+        if (subtreePreceded) {
+          path.remove(depth);
+          return false;
+        }
+      } else if (matcher.matchesAt(node)) {
+        return true;
+      }
+      for (Tree kid : node.children()) {
+        if (find(kid, subtreePreceded)) {
+          return true;
+        }
+      }
+      path.remove(depth);
+      return false;
+    }
+
   }
 
   private static boolean matchedOnTree; // hack-in field for seeing whether there was a match.
 
+  /**
+   * Applies each pair of patterns in turn to a tree, as often as the tregex
+   * pattern matches.  Whether anything matched is left in a static field,
+   * so this is not safe to call from more than one thread; use
+   * {@link #processPatternsOnTreeWithResult} for that.
+   *
+   * @return The transformed tree, or null if the operations deleted it
+   */
   public static Tree processPatternsOnTree(List<Pair<TregexPattern, TsurgeonPattern>> ops, Tree t) {
-    matchedOnTree = false;
+    TsurgeonResult result = processPatternsOnTreeWithResult(ops, t);
+    matchedOnTree = result.matched();
+    return result.tree();
+  }
+
+  /**
+   * Like {@link #processPatternsOnTree}, but reports what happened in the
+   * returned {@link TsurgeonResult} rather than in static state.  All of the
+   * state of an evaluation is kept per call, so one list of compiled
+   * patterns can be used by many threads at once, each on its own tree.
+   * <p>
+   * Patterns whose {@link TregexPattern#requiredLabels} do not all occur in
+   * the tree are not searched for at all.  The parents of the nodes of the
+   * tree are worked out once and shared by all of the patterns, until one of
+   * them changes the tree.  The highest coindex in the tree is only looked
+   * for if an operation coindexes nodes, and is then kept up to date as the
+   * operations change the tree.
+   *
+   * @param ops The pattern pairs to apply, in order
+   * @param t The tree to operate on; it is destructively modified
+   * @return The transformed tree and the operations that fired on it
+   */
+  public static TsurgeonResult processPatternsOnTreeWithResult(List<Pair<TregexPattern, TsurgeonPattern>> ops, Tree t) {
+    return processPatternsOnTreeWithResult(ops, t, false);
+  }
+
+  /**
+   * Like {@link #processPatternsOnTreeWithResult(List, Tree)}, but can also
+   * keep the tree as it was before it was operated on, for comparing the
+   * two.  The copy is only made if an operation is about to change the
+   * tree, so asking for it costs nothing for trees that no pattern
+   * matches.  See {@link TsurgeonResult#original()}.
+   *
+   * @param ops The pattern pairs to apply, in order
+   * @param t The tree to operate on; it is destructively modified
+   * @param keepOriginal Whether to keep a copy of <code>t</code> as it was
+   * @return The transformed tree, the original, and the operations that
+   *     fired on it
+   */
+  public static TsurgeonResult processPatternsOnTreeWithResult(List<Pair<TregexPattern, TsurgeonPattern>> ops, Tree t, boolean keepOriginal) {
+    return processPatternsOnTreeWithResult(ops, t, keepOriginal, null);
+  }
+
+  /**
+   * Like {@link #processPatternsOnTreeWithResult(List, Tree, boolean)}, but
+   * also adds the cost of each pattern pair on the tree to a profile, if
+   * the profile samples it.
+   *
+   * @param profile The profile of <code>ops</code> to add to, or null
+   */
+  public static TsurgeonResult processPatternsOnTreeWithResult(List<Pair<TregexPattern, TsurgeonPattern>> ops, Tree t, boolean keepOriginal,
+                                                               TsurgeonProfile profile) {
+    TsurgeonProfile.Counts counts = (profile != null && profile.sample() ? new TsurgeonProfile.Counts() : null);
+    Snapshot snapshot = (keepOriginal ? new Snapshot() : null);
+    Map<Pair<TregexPattern,TsurgeonPattern>,Integer> fired = new LinkedHashMap<Pair<TregexPattern,TsurgeonPattern>,Integer>();
+    Set<String> labels = new HashSet<String>();
+    addLabels(t, labels);
+    IdentityHashMap<Tree,Tree> parents = new IdentityHashMap<Tree,Tree>();
+    CoindexationGenerator coindexer = new CoindexationGenerator();
     for (Pair<TregexPattern,TsurgeonPattern> op : ops) {
+      if ( ! labels.containsAll(op.first().requiredLabels())) {
+        if (counts != null) {
+          profile.skipped(op);
+        }
+        continue;
+      }
       try {
         if (DEBUG) {
           System.err.println("Running pattern " + op.first());
         }
-        TregexMatcher m = op.first().matcher(t);
-        while (m.find()) {
-          matchedOnTree = true;
-          t = op.second().evaluate(t,m);
-          if (t == null) {
-            return null;
+        MutableInteger timesApplied = new MutableInteger();
+        t = applyWhileMatching(op.first(), op.second(), t, parents, coindexer, snapshot, timesApplied, counts);
+        if (counts != null) {
+          profile.add(op, counts);
+          counts.clear();
+        }
+        if (timesApplied.intValue() > 0) {
+          Integer count = fired.get(op);
+          fired.put(op, timesApplied.intValue() + (count == null ? 0 : count));
+          if (t != null) {
+            // labels that are no longer there do no harm
+            addLabels(t, labels);
           }
-          m = op.first().matcher(t);
+        }
+        if (t == null) {
+          return new TsurgeonResult(null, Snapshot.original(snapshot), fired);
         }
       } catch (NullPointerException npe) {
         throw new RuntimeException("Tsurgeon.processPatternsOnTree failed to match label for pattern: " + op.first() + ", " + op.second(), npe);
       }
     }
-    return t;
+    return new TsurgeonResult(t, Snapshot.original(snapshot), fired);
+  }
+
+  /** A copy of a tree as it was before it was first operated on */
+  private static class Snapshot {
+
+    private Tree original; // = null;
+
+    /** Copies t, unless it has already been copied */
+    void take(Tree t) {
+      if (original == null) {
+        original = t.deepCopy();
+      }
+    }
+
+    static Tree original(Snapshot snapshot) {
+      return (snapshot == null ? null : snapshot.original);
+    }
+
   }
 
 
@@ -0,0 +1,76 @@
+package edu.stanford.nlp.trees.tregex.tsurgeon;
+
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The mutable state of one application of a {@link TsurgeonPattern} to a
+ * matched tree: the nodes named by the operations themselves (for example,
+ * by an inserted auxiliary tree), the coindexation counter (which may be shared with the other evaluations on
+ * the same tree), and the nodes
+ * the operations changed.  A new one is made for every evaluation, so
+ * compiled patterns can be shared between threads.
+ */
+class TsurgeonContext {
+
+  final Map<String, Tree> newNodeNames = new HashMap<String,Tree>();
+  final CoindexationGenerator coindexer;
+
+  private final Tree root;
+  private List<Tree> changedNodes = new ArrayList<Tree>();
+
+  TsurgeonContext(Tree t) {
+    this(t, new CoindexationGenerator());
+  }
+
+  /**
+   * Makes a context for an evaluation on <code>t</code> whose coindices
+   * come from <code>coindexer</code>, which was used by earlier evaluations
+   * on the same tree.
+   */
+  TsurgeonContext(Tree t, CoindexationGenerator coindexer) {
+    root = t;
+    this.coindexer = coindexer;
+  }
+
+  /**
+   * A factory for nodes of the same kind as those of the tree being
+   * operated on, for copies of auxiliary trees to be put into it.
+   */
+  TreeFactory treeFactory() {
+    return root.treeFactory();
+  }
+
+  /**
+   * Records that the label or the children of <code>node</code> were changed.
+   * Operations call this so that {@link Tsurgeon} only has to rematch the
+   * parts of the tree that an edit could have affected.
+   */
+  void markChanged(Tree node) {
+    if (changedNodes != null) {
+      changedNodes.add(node);
+    }
+  }
+
+  /**
+   * Records that an operation made a change that can't be described by
+   * {@link #markChanged}, so the whole tree has to be rematched.
+   */
+  void markUntracked() {
+    changedNodes = null;
+  }
+
+  /**
+   * The nodes whose label or children were changed, possibly with
+   * repeats, or <code>null</code> if the changes were not tracked.
+   */
+  List<Tree> changedNodes() {
+    return changedNodes;
+  }
+
+}
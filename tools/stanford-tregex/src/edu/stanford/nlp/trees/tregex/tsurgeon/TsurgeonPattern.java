@@ -31,6 +31,8 @@ package edu.stanford.nlp.trees.tregex.tsurgeon;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.tregex.TregexMatcher;
 
+import java.io.Serializable;
+
 
 /**
  * An abstract class for patterns to manipulate {@link Tree}s when
@@ -38,11 +40,10 @@ import edu.stanford.nlp.trees.tregex.TregexMatcher;
  *
  * @author Roger Levy
  */
-public abstract class TsurgeonPattern {
+public abstract class TsurgeonPattern implements Serializable {
 
   static final TsurgeonPattern[] EMPTY_TSURGEON_PATTERN_ARRAY = new TsurgeonPattern[0];
 
-  TsurgeonPatternRoot root;
   String label;
   TsurgeonPattern[] children;
 
@@ -51,13 +52,6 @@ public abstract class TsurgeonPattern {
     this.children = children;
   }
 
-  protected void setRoot(TsurgeonPatternRoot root) {
-    this.root = root;
-    for (TsurgeonPattern child : children) {
-      child.setRoot(root);
-    }
-  }
-
   @Override
   public String toString() {
     StringBuilder resultSB = new StringBuilder();
@@ -83,6 +77,16 @@ public abstract class TsurgeonPattern {
    * @param m the successfully matched {@link TregexMatcher}
    * @return some node in the tree; depends on implementation and use of the specific subclass.
    */
-  public abstract Tree evaluate(Tree t, TregexMatcher m);
+  public Tree evaluate(Tree t, TregexMatcher m) {
+    return evaluate(t, m, new TsurgeonContext(t));
+  }
+
+  /**
+   * Evaluates the pattern as part of a larger evaluation, keeping any state
+   * of the evaluation in <code>context</code> rather than in the pattern.
+   */
+  abstract Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context);
+
+  private static final long serialVersionUID = 2162135410692843863L;
 
 }
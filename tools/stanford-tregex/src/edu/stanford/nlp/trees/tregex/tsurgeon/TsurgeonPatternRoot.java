@@ -3,38 +3,35 @@ package edu.stanford.nlp.trees.tregex.tsurgeon;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.tregex.TregexMatcher;
 
-import java.util.Map;
-import java.util.HashMap;
-
 /**
  * @author Roger Levy (rog@nlp.stanford.edu)
  */
 class TsurgeonPatternRoot extends TsurgeonPattern {
 
-  final CoindexationGenerator coindexer = new CoindexationGenerator();
-  Map<String, Tree> newNodeNames;
-
-
   public TsurgeonPatternRoot(TsurgeonPattern[] children) {
     super("operations: ", children);
-    setRoot(this);
   }
 
 
   /**
    * returns null if one of the surgeries eliminates the tree entirely.  The
    * operated-on tree is not to be trusted in this instance.
+   * <br>
+   * A root nested inside another (as made by
+   * {@link Tsurgeon#collectOperations}) shares the outer root's context, so
+   * names and coindices carry across the collected operations.
    */
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    newNodeNames = new HashMap<String,Tree>();
-    coindexer.setLastIndex(t);
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
     for (TsurgeonPattern child : children) {
-      t = child.evaluate(t, m);
+      t = child.evaluate(t, m, context);
       if (t == null) {
         return null;
       }
     }
     return t;
   }
+
+  private static final long serialVersionUID = 8332320286764527646L;
+
 }
@@ -0,0 +1,245 @@
+package edu.stanford.nlp.trees.tregex.tsurgeon;
+
+import edu.stanford.nlp.trees.tregex.TregexPattern;
+import edu.stanford.nlp.util.Pair;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records where the time of a Tsurgeon run goes, rule by rule, for the
+ * <code>-profile</code> option.  For each tregex/tsurgeon pattern pair it
+ * counts the trees it was searched on and the trees it was skipped on
+ * because they lack one of its {@link TregexPattern#requiredLabels}, the
+ * searches made, the nodes the pattern was tried at and the time spent in
+ * them, the matches whose operations were applied and the time spent in
+ * those, and the restarts, which are the searches made again after an
+ * application changed the tree.
+ * <p/>
+ * To keep the cost low enough to leave on, a profile can sample trees,
+ * only timing every n-th tree that it is asked about; the other trees are
+ * processed exactly as without profiling.  The counts of a rule are kept
+ * per tree and added to it once that tree is done, so a profile can be
+ * shared by many threads.
+ */
+public class TsurgeonProfile {
+
+  private final List<Rule> rules = new ArrayList<Rule>();
+  private final IdentityHashMap<Pair<TregexPattern,TsurgeonPattern>,Rule> rulesByOp =
+    new IdentityHashMap<Pair<TregexPattern,TsurgeonPattern>,Rule>();
+  private final int sampleEvery;
+  private final AtomicLong treesSeen = new AtomicLong();
+
+  /**
+   * Makes a profile of a list of pattern pairs.
+   *
+   * @param ops The pattern pairs that are to be run, in order
+   * @param sampleEvery Profile one tree in this many; 1 profiles them all
+   */
+  public TsurgeonProfile(List<Pair<TregexPattern,TsurgeonPattern>> ops, int sampleEvery) {
+    if (sampleEvery < 1) {
+      throw new IllegalArgumentException("Can't profile one tree in " + sampleEvery);
+    }
+    this.sampleEvery = sampleEvery;
+    for (Pair<TregexPattern,TsurgeonPattern> op : ops) {
+      Rule rule = new Rule(rules.size() + 1, op);
+      rules.add(rule);
+      rulesByOp.put(op, rule);
+    }
+  }
+
+  /** Whether the next tree is to be profiled */
+  boolean sample() {
+    return treesSeen.getAndIncrement() % sampleEvery == 0;
+  }
+
+  /** Adds the counts for one tree to the totals of the rule for op */
+  void add(Pair<TregexPattern,TsurgeonPattern> op, Counts counts) {
+    Rule rule = rulesByOp.get(op);
+    if (rule != null) {
+      rule.add(counts);
+    }
+  }
+
+  /** Notes that op wasn't searched for on a tree, which lacked a label it needs */
+  void skipped(Pair<TregexPattern,TsurgeonPattern> op) {
+    Rule rule = rulesByOp.get(op);
+    if (rule != null) {
+      rule.skip();
+    }
+  }
+
+
+  /**
+   * The counts for one rule on one tree, which are only used by the thread
+   * processing the tree.
+   */
+  static class Counts {
+
+    long searches;
+    long restarts;
+    long nodesTried;
+    long findNanos;
+    long matches;
+    long evaluateNanos;
+
+    void clear() {
+      searches = restarts = nodesTried = findNanos = matches = evaluateNanos = 0;
+    }
+
+  }
+
+
+  /** The totals for one pattern pair */
+  private static class Rule {
+
+    final int number;
+    final Pair<TregexPattern,TsurgeonPattern> op;
+
+    long trees;
+    long skippedTrees;
+    long searches;
+    long restarts;
+    long nodesTried;
+    long findNanos;
+    long matches;
+    long evaluateNanos;
+
+    Rule(int number, Pair<TregexPattern,TsurgeonPattern> op) {
+      this.number = number;
+      this.op = op;
+    }
+
+    synchronized void add(Counts counts) {
+      trees++;
+      searches += counts.searches;
+      restarts += counts.restarts;
+      nodesTried += counts.nodesTried;
+      findNanos += counts.findNanos;
+      matches += counts.matches;
+      evaluateNanos += counts.evaluateNanos;
+    }
+
+    synchronized void skip() {
+      skippedTrees++;
+    }
+
+    synchronized long totalNanos() {
+      return findNanos + evaluateNanos;
+    }
+
+  }
+
+
+  /** The rules, the most costly first */
+  private List<Rule> sortedRules() {
+    List<Rule> sorted = new ArrayList<Rule>(rules);
+    Collections.sort(sorted, new Comparator<Rule>() {
+      public int compare(Rule r1, Rule r2) {
+        long t1 = r1.totalNanos();
+        long t2 = r2.totalNanos();
+        if (t1 != t2) {
+          return (t1 > t2 ? -1 : 1);
+        }
+        return r1.number - r2.number;
+      }
+    });
+    return sorted;
+  }
+
+  /**
+   * Prints a table of the <code>top</code> most costly rules, with the
+   * totals for all of the rules.
+   */
+  public void printReport(PrintWriter pw, int top) {
+    long totalNanos = 0;
+    for (Rule rule : rules) {
+      totalNanos += rule.totalNanos();
+    }
+    long trees = (treesSeen.get() + sampleEvery - 1) / sampleEvery;
+    pw.printf("Tsurgeon profile of %d rules on %d trees%s, %.1f ms in all%n", rules.size(), trees,
+              (sampleEvery > 1 ? " (1 in " + sampleEvery + ")" : ""), totalNanos / 1e6);
+    pw.printf("%6s %6s %10s %10s %10s %12s %10s %10s %10s  %s%n", "rule", "%time", "find ms", "eval ms",
+              "searches", "nodes", "matches", "restarts", "skipped", "pattern");
+    List<Rule> sorted = sortedRules();
+    for (Rule rule : sorted.subList(0, Math.min(top, sorted.size()))) {
+      synchronized (rule) {
+        pw.printf("%6d %6.2f %10.2f %10.2f %10d %12d %10d %10d %10d  %s%n", rule.number,
+                  (totalNanos == 0 ? 0.0 : 100.0 * rule.totalNanos() / totalNanos),
+                  rule.findNanos / 1e6, rule.evaluateNanos / 1e6, rule.searches, rule.nodesTried,
+                  rule.matches, rule.restarts, rule.skippedTrees, oneLine(rule.op.first().pattern()));
+      }
+    }
+    pw.flush();
+  }
+
+  /**
+   * Writes every rule, the most costly first, to a file: as a JSON array of
+   * objects if its name ends in <code>.json</code>, and otherwise as CSV
+   * with a header line.
+   */
+  public void write(String filename) throws IOException {
+    PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), "UTF-8")));
+    try {
+      if (filename.endsWith(".json")) {
+        writeJSON(pw);
+      } else {
+        writeCSV(pw);
+      }
+    } finally {
+      pw.close();
+    }
+  }
+
+  private void writeCSV(PrintWriter pw) {
+    pw.println("rule,trees,skippedTrees,searches,restarts,nodesTried,findNanos,matches,evaluateNanos,pattern,operation");
+    for (Rule rule : sortedRules()) {
+      synchronized (rule) {
+        pw.println(rule.number + "," + rule.trees + "," + rule.skippedTrees + "," + rule.searches + "," +
+                   rule.restarts + "," + rule.nodesTried + "," + rule.findNanos + "," + rule.matches + "," +
+                   rule.evaluateNanos + "," + csvQuote(rule.op.first().pattern()) + "," + csvQuote(rule.op.second().toString()));
+      }
+    }
+  }
+
+  private void writeJSON(PrintWriter pw) {
+    pw.println("[");
+    List<Rule> sorted = sortedRules();
+    for (int i = 0; i < sorted.size(); i++) {
+      Rule rule = sorted.get(i);
+      synchronized (rule) {
+        pw.print("  {\"rule\": " + rule.number + ", \"trees\": " + rule.trees + ", \"skippedTrees\": " + rule.skippedTrees +
+                 ", \"searches\": " + rule.searches + ", \"restarts\": " + rule.restarts + ", \"nodesTried\": " + rule.nodesTried +
+                 ", \"findNanos\": " + rule.findNanos + ", \"matches\": " + rule.matches + ", \"evaluateNanos\": " + rule.evaluateNanos +
+                 ", \"pattern\": " + jsonQuote(rule.op.first().pattern()) + ", \"operation\": " + jsonQuote(rule.op.second().toString()) + "}");
+      }
+      pw.println(i < sorted.size() - 1 ? "," : "");
+    }
+    pw.println("]");
+  }
+
+  private static String oneLine(String s) {
+    return s.replaceAll("\\s+", " ").trim();
+  }
+
+  private static String csvQuote(String s) {
+    return '"' + s.replace("\"", "\"\"") + '"';
+  }
+
+  private static String jsonQuote(String s) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < ' ') {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+}
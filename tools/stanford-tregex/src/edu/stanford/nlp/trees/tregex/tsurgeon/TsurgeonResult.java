@@ -0,0 +1,78 @@
+package edu.stanford.nlp.trees.tregex.tsurgeon;
+
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.tregex.TregexPattern;
+import edu.stanford.nlp.util.Pair;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The outcome of running a list of tregex/tsurgeon pattern pairs over one
+ * tree with {@link Tsurgeon#processPatternsOnTreeWithResult}: the
+ * transformed tree, and how many times each pair's operations were applied.
+ * If it was asked for, the result also holds a copy of the tree as it was
+ * before any operation changed it, which is only made if one does.
+ */
+public class TsurgeonResult {
+
+  private final Tree tree;
+  private final Tree original;
+  private final Map<Pair<TregexPattern,TsurgeonPattern>,Integer> firedOperations;
+
+  TsurgeonResult(Tree tree, Tree original, Map<Pair<TregexPattern,TsurgeonPattern>,Integer> firedOperations) {
+    this.tree = tree;
+    this.original = original;
+    this.firedOperations = Collections.unmodifiableMap(firedOperations);
+  }
+
+  /**
+   * The transformed tree.  This is <code>null</code> if the operations
+   * deleted the whole tree.
+   */
+  public Tree tree() {
+    return tree;
+  }
+
+  /**
+   * The tree as it was before the operations were applied, if the original
+   * was asked to be kept.  If no operation fired, this is the same object
+   * as {@link #tree()}, since the tree was not changed; otherwise it is a
+   * copy made just before the first operation was applied.  Without
+   * asking for the original, this is <code>null</code> whenever an
+   * operation fired.
+   */
+  public Tree original() {
+    return (matched() ? original : tree);
+  }
+
+  /**
+   * Whether any of the patterns matched, and so whether the tree was
+   * operated on at all.
+   */
+  public boolean matched() {
+    return ! firedOperations.isEmpty();
+  }
+
+  /**
+   * The pattern pairs whose operations were applied, in the order in which
+   * they first fired, each with the number of times it fired.
+   */
+  public Map<Pair<TregexPattern,TsurgeonPattern>,Integer> firedOperations() {
+    return firedOperations;
+  }
+
+  /**
+   * The number of times the operations of <code>op</code> were applied.
+   */
+  public int timesFired(Pair<TregexPattern,TsurgeonPattern> op) {
+    Integer count = firedOperations.get(op);
+    return count == null ? 0 : count;
+  }
+
+  @Override
+  public String toString() {
+    return "TsurgeonResult[matched=" + matched() + ", fired=" + firedOperations.size() + ", tree=" + tree + ']';
+  }
+
+}
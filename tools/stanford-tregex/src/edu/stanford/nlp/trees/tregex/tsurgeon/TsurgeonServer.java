@@ -0,0 +1,243 @@
+package edu.stanford.nlp.trees.tregex.tsurgeon;
+
+import edu.stanford.nlp.trees.ParentedTreeFactory;
+import edu.stanford.nlp.trees.PennTreebankLanguagePack;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeFactory;
+import edu.stanford.nlp.trees.TreePrint;
+import edu.stanford.nlp.trees.TreeReader;
+import edu.stanford.nlp.trees.TreeReaderFactory;
+import edu.stanford.nlp.trees.tregex.TregexPattern;
+import edu.stanford.nlp.util.Pair;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Applies one compiled list of Tsurgeon operations to trees sent to it,
+ * either on standard input or over localhost TCP connections, so that the
+ * JVM is started and the rules compiled only once for many documents.
+ * <p>
+ * The protocol is line based.  Each line sent is a request, holding one or
+ * more trees in Penn Treebank format; blank lines are ignored.  For each
+ * request, in the order they were sent, the server prints the transformed
+ * trees in the chosen {@link TreePrint} format, followed by a status line
+ * starting with <code>%</code>, which can't start a tree:
+ * <pre>
+ * % ok 2 trees 1.35 ms
+ * % error &lt;message&gt;
+ * </pre>
+ * The time is that from reading the request to finishing processing it,
+ * including any wait for a free thread.  Requests are processed
+ * concurrently on a pool of threads shared by all connections, and a client
+ * may send further requests before earlier ones have been answered.
+ */
+public class TsurgeonServer {
+
+  private final List<Pair<TregexPattern,TsurgeonPattern>> ops;
+  private final String treePrintFormats;
+  private final boolean printMatched;
+  private final String encoding;
+  private final int nThreads;
+  private final ExecutorService threadPool;
+  private final TreeReaderFactory trf;
+
+  /** Put on a connection's queue of responses when it has no more requests */
+  private static final Future<Response> END_OF_REQUESTS = new FutureTask<Response>(new Callable<Response>() {
+    public Response call() {
+      return null;
+    }
+  });
+
+  /**
+   * @param ops The pattern pairs to apply, in order
+   * @param treePrintFormats The {@link TreePrint} formats to print trees in
+   * @param printMatched Whether to also print the original of each tree
+   *     that was operated on, as the <code>-m</code> option does
+   * @param encoding The character encoding of requests and responses
+   * @param nThreads The number of threads to process requests on
+   */
+  public TsurgeonServer(List<Pair<TregexPattern,TsurgeonPattern>> ops, String treePrintFormats,
+                        boolean printMatched, String encoding, int nThreads) {
+    this(ops, new ParentedTreeFactory(), treePrintFormats, printMatched, encoding, nThreads);
+  }
+
+  /**
+   * @param ops The pattern pairs to apply, in order
+   * @param tf The factory to make the nodes of the trees read with, such
+   *     as a {@link ParentedTreeFactory}
+   * @param treePrintFormats The {@link TreePrint} formats to print trees in
+   * @param printMatched Whether to also print the original of each tree
+   *     that was operated on, as the <code>-m</code> option does
+   * @param encoding The character encoding of requests and responses
+   * @param nThreads The number of threads to process requests on
+   */
+  public TsurgeonServer(List<Pair<TregexPattern,TsurgeonPattern>> ops, TreeFactory tf, String treePrintFormats,
+                        boolean printMatched, String encoding, int nThreads) {
+    this.ops = ops;
+    this.trf = new TregexPattern.TRegexTreeReaderFactory(tf);
+    this.treePrintFormats = treePrintFormats;
+    this.printMatched = printMatched;
+    this.encoding = encoding;
+    this.nThreads = nThreads;
+    this.threadPool = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "TsurgeonServer");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /** The outcome of one request */
+  private static class Response {
+    final List<TsurgeonResult> results;
+    final long nanos;
+    final String error;
+
+    Response(List<TsurgeonResult> results, long nanos, String error) {
+      this.results = results;
+      this.nanos = nanos;
+      this.error = error;
+    }
+  }
+
+  /**
+   * Answers the requests read from <code>in</code> on <code>out</code>,
+   * until <code>in</code> is exhausted.
+   *
+   * @throws IOException If a request can't be read or a response written
+   */
+  public void serve(InputStream in, OutputStream out) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, encoding));
+    final PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, encoding)));
+    final BlockingQueue<Future<Response>> responses = new ArrayBlockingQueue<Future<Response>>(4 * nThreads);
+    Thread responder = new Thread("TsurgeonServer responder") {
+      @Override
+      public void run() {
+        TreePrint tp = new TreePrint(treePrintFormats, new PennTreebankLanguagePack());
+        try {
+          for (Future<Response> next; (next = responses.take()) != END_OF_REQUESTS; ) {
+            printResponse(waitFor(next), tp, writer);
+            if (responses.isEmpty()) {
+              writer.flush();
+            }
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        writer.flush();
+      }
+    };
+    responder.start();
+
+    try {
+      for (String line; (line = reader.readLine()) != null; ) {
+        if (line.trim().length() == 0) {
+          continue;
+        }
+        final String request = line;
+        final long received = System.nanoTime();
+        responses.put(threadPool.submit(new Callable<Response>() {
+          public Response call() {
+            return process(request, received);
+          }
+        }));
+      }
+      responses.put(END_OF_REQUESTS);
+      responder.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    if (writer.checkError()) {
+      throw new IOException("Error writing Tsurgeon server responses");
+    }
+  }
+
+  private Response process(String request, long received) {
+    List<TsurgeonResult> results = new ArrayList<TsurgeonResult>();
+    try {
+      TreeReader tr = trf.newTreeReader(new StringReader(request));
+      for (Tree t; (t = tr.readTree()) != null; ) {
+        results.add(Tsurgeon.processPatternsOnTreeWithResult(ops, t, printMatched));
+      }
+    } catch (Exception e) {
+      return new Response(null, System.nanoTime() - received, e.toString());
+    }
+    return new Response(results, System.nanoTime() - received, null);
+  }
+
+  private void printResponse(Response response, TreePrint tp, PrintWriter pw) {
+    if (response.error != null) {
+      pw.println("% error " + response.error.replace('\n', ' '));
+      return;
+    }
+    for (TsurgeonResult result : response.results) {
+      Tsurgeon.displayResult(result, printMatched, tp, pw);
+    }
+    pw.printf("%% ok %d trees %.2f ms%n", response.results.size(), response.nanos / 1000000.0);
+  }
+
+  private static Response waitFor(Future<Response> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      return new Response(null, 0, e.getCause().toString());
+    }
+  }
+
+  /**
+   * Accepts connections on the given port of the loopback interface, and
+   * answers the requests on each of them, until the process is killed.
+   *
+   * @throws IOException If the port can't be listened on
+   */
+  public void listen(int port) throws IOException {
+    ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+    System.err.println("Tsurgeon server listening on localhost:" + serverSocket.getLocalPort());
+    while (true) {
+      final Socket socket = serverSocket.accept();
+      Thread connection = new Thread("TsurgeonServer connection") {
+        @Override
+        public void run() {
+          try {
+            serve(socket.getInputStream(), socket.getOutputStream());
+          } catch (IOException e) {
+            System.err.println("Tsurgeon server: " + e);
+          } finally {
+            try {
+              socket.close();
+            } catch (IOException e) {
+              // nothing more to do with it
+            }
+          }
+        }
+      };
+      connection.setDaemon(true);
+      connection.start();
+    }
+  }
+
+  /**
+   * Stops the threads that process requests, once they have finished
+   * the requests already made.
+   */
+  public void shutdown() {
+    threadPool.shutdown();
+  }
+
+}
@@ -0,0 +1,84 @@
+package edu.stanford.nlp.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A table of symbols.  Each distinct string shown to the table is given a
+ * dense integer id, starting from 1, and one copy of it is kept to stand
+ * for all of the strings equal to it.  Two strings from the same table are
+ * equal exactly when their ids are, so they can be compared with
+ * <code>==</code> on the ids.
+ * <p/>
+ * Unlike an {@link Interner}, a symbol table never forgets a string, so
+ * that an id means the same string for as long as the table exists.  Ids
+ * are not the same from one run to the next, though, so they shouldn't be
+ * saved.  The methods of a symbol table are thread-safe.
+ * <p/>
+ * As nothing is ever removed, a table grows with every new string it is
+ * shown.  That is fine for a run over a fixed corpus, but a table fed
+ * strings without end, as the {@link #getGlobal global} table would be by
+ * a long-running server reading trees with SymbolLabels, uses more and
+ * more memory.  Such programs shouldn't intern what they read.
+ */
+public class SymbolTable {
+
+  /** The id of <code>null</code>, which is never given to a string */
+  public static final int NO_SYMBOL = 0;
+
+  private static final SymbolTable global = new SymbolTable();
+
+  /**
+   * The table shared by all of the code that doesn't need its own,
+   * such as {@link edu.stanford.nlp.ling.SymbolLabel}.  It lasts as long
+   * as the program, so every string ever interned in it is kept.
+   */
+  public static SymbolTable getGlobal() {
+    return global;
+  }
+
+  private final Map<String,Integer> symbols = new HashMap<String,Integer>();
+  private final List<String> strings = new ArrayList<String>();
+
+  public SymbolTable() {
+    strings.add(null); // for NO_SYMBOL
+  }
+
+  /**
+   * Returns the id of a string, giving it a new one if the table hasn't
+   * seen an equal string before.
+   *
+   * @param s A string, or <code>null</code>
+   * @return The id of s, or {@link #NO_SYMBOL} if it is <code>null</code>
+   */
+  public synchronized int symbol(String s) {
+    if (s == null) {
+      return NO_SYMBOL;
+    }
+    Integer symbol = symbols.get(s);
+    if (symbol == null) {
+      symbol = strings.size();
+      symbols.put(s, symbol);
+      strings.add(s);
+    }
+    return symbol;
+  }
+
+  /**
+   * Returns the string that stands for all of those with the given id.
+   *
+   * @param symbol An id given out by {@link #symbol}
+   * @return The string, or <code>null</code> for {@link #NO_SYMBOL}
+   */
+  public synchronized String string(int symbol) {
+    return strings.get(symbol);
+  }
+
+  /** The number of strings in the table */
+  public synchronized int size() {
+    return strings.size() - 1;
+  }
+
+}
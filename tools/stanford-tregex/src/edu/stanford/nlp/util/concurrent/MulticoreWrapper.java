@@ -0,0 +1,148 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs a {@link ThreadsafeProcessor} over a stream of inputs on a pool of
+ * worker threads, handing the results back in the order in which the inputs
+ * were submitted.
+ * <p>
+ * Typical use:
+ * <pre>
+ * MulticoreWrapper&lt;I,O&gt; wrapper = new MulticoreWrapper&lt;I,O&gt;(nThreads, processor);
+ * for (I item : items) {
+ *   wrapper.put(item);
+ *   while (wrapper.peek()) {
+ *     consume(wrapper.poll());
+ *   }
+ * }
+ * wrapper.join();
+ * while (wrapper.peek()) {
+ *   consume(wrapper.poll());
+ * }
+ * </pre>
+ * Results are held in a bounded reorder buffer: {@link #put} blocks while
+ * <code>maxPending</code> results are outstanding and the oldest of them has
+ * not finished yet, so a slow item holds up the input rather than letting
+ * finished results pile up behind it.  If the caller drains finished results
+ * with {@link #poll} after each <code>put</code> as above, memory use is
+ * bounded by <code>maxPending</code> items however long the input is.
+ * <p>
+ * This class itself is not threadsafe: <code>put</code> and <code>poll</code>
+ * should be called from a single thread.
+ *
+ * @param <I> The input type
+ * @param <O> The output type
+ */
+public class MulticoreWrapper<I,O> {
+
+  private final ThreadsafeProcessor<I,O> processor;
+  private final ExecutorService threadPool;
+  private final int maxPending;
+
+  /** Submitted items in input order; the head is the next result to return. */
+  private final Deque<Future<O>> pending = new ArrayDeque<Future<O>>();
+
+  /**
+   * Uses a reorder buffer of four items per thread.
+   *
+   * @param nThreads The number of worker threads
+   * @param processor The processor that is applied to every item
+   */
+  public MulticoreWrapper(int nThreads, ThreadsafeProcessor<I,O> processor) {
+    this(nThreads, processor, 4 * nThreads);
+  }
+
+  /**
+   * @param nThreads The number of worker threads
+   * @param processor The processor that is applied to every item
+   * @param maxPending The maximum number of submitted items whose results
+   *     have not yet been returned by {@link #poll}
+   */
+  public MulticoreWrapper(int nThreads, ThreadsafeProcessor<I,O> processor, int maxPending) {
+    if (nThreads < 1) {
+      throw new IllegalArgumentException("MulticoreWrapper: number of threads must be positive: " + nThreads);
+    }
+    if (maxPending < nThreads) {
+      throw new IllegalArgumentException("MulticoreWrapper: buffer of " + maxPending + " is smaller than the number of threads " + nThreads);
+    }
+    this.processor = processor;
+    this.maxPending = maxPending;
+    this.threadPool = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "MulticoreWrapper");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Submits an item for processing.  Blocks while the reorder buffer is
+   * full and its oldest item is still being processed.
+   */
+  public void put(final I item) {
+    if (pending.size() >= maxPending) {
+      waitFor(pending.peekFirst());
+    }
+    pending.addLast(threadPool.submit(new Callable<O>() {
+      public O call() {
+        return processor.process(item);
+      }
+    }));
+  }
+
+  /**
+   * Returns true if the next result in input order is ready to be polled.
+   */
+  public boolean peek() {
+    return ! pending.isEmpty() && pending.peekFirst().isDone();
+  }
+
+  /**
+   * Returns the next result in input order, waiting for it if necessary.
+   *
+   * @throws NoSuchElementException If there are no outstanding items
+   * @throws RuntimeException If the processor threw an exception on the item
+   */
+  public O poll() {
+    if (pending.isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    return waitFor(pending.pollFirst());
+  }
+
+  /**
+   * Waits for all submitted items to be processed and shuts down the
+   * worker threads.  Results remain available through {@link #poll}.
+   */
+  public void join() {
+    for (Future<O> future : pending) {
+      waitFor(future);
+    }
+    threadPool.shutdown();
+  }
+
+  private static <O> O waitFor(Future<O> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+}
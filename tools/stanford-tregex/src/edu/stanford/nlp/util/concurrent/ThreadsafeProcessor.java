@@ -0,0 +1,22 @@
+package edu.stanford.nlp.util.concurrent;
+
+/**
+ * Objects that wish to use MulticoreWrapper must implement this
+ * interface.  A single instance is shared by all of the worker
+ * threads, so {@link #process} must be safe to call concurrently.
+ *
+ * @param <I> The input type
+ * @param <O> The output type
+ */
+public interface ThreadsafeProcessor<I,O> {
+
+  /**
+   * Processes one input item.  May be called from several threads at
+   * once.
+   *
+   * @param input The item to process
+   * @return The result of processing <code>input</code>
+   */
+  public O process(I input);
+
+}